@@ -0,0 +1,101 @@
+package com.alura.literalura;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Made-up Gutendex data for the benchmarks, the same on every run.
+ */
+final class BenchmarkData {
+
+    private static final String[] LANGUAGES = {"en", "fr", "de", "es", "pt", "it", "fi", "nl"};
+    private static final String[] WORDS = {"Pride", "Prejudice", "War", "Peace", "Great", "Expectations",
+            "Tale", "Two", "Cities", "Moby", "Dick", "Whale", "Sea", "Island", "Treasure", "Night",
+            "Misérables", "Quixote", "Adventures", "Journey", "Centre", "Earth", "Voyage", "Time"};
+
+    private BenchmarkData() {}
+
+    /**
+     * @param firstId Gutendex id of the first book
+     * @param count Number of books
+     * @param authors Number of distinct authors to spread the books over
+     * @return Books with ids firstId, firstId + 1, ...
+     */
+    static List<GutendexBook> books(int firstId, int count, int authors) {
+        Random random = new Random(firstId);
+        List<GutendexBook> books = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            GutendexBook book = new GutendexBook();
+            book.setId(firstId + i);
+            book.setTitle(WORDS[random.nextInt(WORDS.length)] + " and " + WORDS[random.nextInt(WORDS.length)]
+                    + " " + (firstId + i));
+            // One book in ten has a co-author, one in twenty a second language
+            List<GutendexPerson> people = new ArrayList<>(List.of(person(random.nextInt(authors))));
+            if (random.nextInt(10) == 0) {
+                people.add(person(random.nextInt(authors)));
+            }
+            book.setAuthors(people);
+            List<String> languages = new ArrayList<>(List.of(LANGUAGES[random.nextInt(LANGUAGES.length)]));
+            if (random.nextInt(20) == 0) {
+                languages.add(LANGUAGES[random.nextInt(LANGUAGES.length)]);
+            }
+            book.setLanguages(languages);
+            book.setDownload_count(random.nextInt(100_000));
+            book.setSubjects(List.of("Fiction", WORDS[random.nextInt(WORDS.length)] + " -- Fiction"));
+            books.add(book);
+        }
+        return books;
+    }
+
+    // Same number, same person and years
+    private static GutendexPerson person(int number) {
+        GutendexPerson person = new GutendexPerson("Author" + number + ", Given" + number);
+        person.setBirth_year(1500 + number % 450);
+        person.setDeath_year(person.getBirth_year() + 30 + number % 60);
+        return person;
+    }
+
+    /**
+     * @param books The books on the page
+     * @return The page as Gutendex would send it
+     */
+    static String pageJson(List<GutendexBook> books) {
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("count", 76_000);
+        page.put("next", "https://gutendex.com/books/?page=2");
+        page.put("previous", null);
+        page.put("results", books);
+        try {
+            return new ObjectMapper().writeValueAsString(page);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes a catalog dump, one book as JSON per line (see CatalogDumpLoader).
+     * @param file Where to write the dump
+     * @param count Number of books, with Gutendex ids 1 to count
+     * @param authors Number of distinct authors
+     */
+    static void writeDump(Path file, int count, int authors) throws IOException {
+        ObjectWriter writer = new ObjectMapper().writer();
+        try (BufferedWriter out = Files.newBufferedWriter(file)) {
+            for (GutendexBook book : books(1, count, authors)) {
+                out.write(writer.writeValueAsString(book));
+                out.newLine();
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.alura.literalura;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading a full-size catalog dump into an empty library.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class CatalogDumpBenchmark {
+
+    private static final int BOOKS = 75_000;
+    private static final int AUTHORS = 25_000;
+
+    private EmbeddedLibrary library;
+    private CatalogDumpLoader catalogDumpLoader;
+    private Path dumpFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        library = EmbeddedLibrary.start(false);
+        catalogDumpLoader = library.bean(CatalogDumpLoader.class);
+        dumpFile = Files.createTempFile("catalog", ".jsonl");
+        BenchmarkData.writeDump(dumpFile, BOOKS, AUTHORS);
+    }
+
+    @Setup(Level.Iteration)
+    public void emptyLibrary() {
+        library.bean(JdbcTemplate.class).execute("TRUNCATE books, authors CASCADE");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        library.close();
+        Files.deleteIfExists(dumpFile);
+    }
+
+    @Benchmark
+    public CatalogDumpLoader.LoadResult loadDump() {
+        return catalogDumpLoader.load(dumpFile);
+    }
+}
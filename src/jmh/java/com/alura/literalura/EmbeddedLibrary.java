@@ -0,0 +1,109 @@
+package com.alura.literalura;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The whole application running against an embedded PostgreSQL, for the
+ * database and REST benchmarks. Nothing needs to be installed.
+ */
+final class EmbeddedLibrary implements AutoCloseable {
+
+    private static final int SEED_CHUNK = 1000;
+
+    // BenchmarkData's authors 0 to ?, with the same names and years
+    private static final String SEED_AUTHORS =
+            "INSERT INTO authors (id, name, normalized_name, birth_year, death_year) " +
+            "SELECT nextval('authors_seq'), 'Author' || n || ', Given' || n, 'author' || n || ', given' || n, " +
+            "1500 + n % 450, 1500 + n % 450 + 30 + n % 60 " +
+            "FROM generate_series(0, ?) AS n " +
+            "ON CONFLICT (normalized_name) DO NOTHING";
+
+    private final EmbeddedPostgres postgres;
+    private final ConfigurableApplicationContext context;
+
+    private EmbeddedLibrary(EmbeddedPostgres postgres, ConfigurableApplicationContext context) {
+        this.postgres = postgres;
+        this.context = context;
+    }
+
+    /**
+     * Starts PostgreSQL and the application (without the console menu).
+     * @param web Whether to start the web server (on a random port)
+     */
+    static EmbeddedLibrary start(boolean web) throws IOException {
+        EmbeddedPostgres postgres = EmbeddedPostgres.start();
+        Path workDir = Files.createTempDirectory("literalura-benchmark");
+
+        SpringApplication application = new SpringApplication(LiteraLuraApplication.class);
+        application.setWebApplicationType(web ? WebApplicationType.SERVLET : WebApplicationType.NONE);
+        ConfigurableApplicationContext context = application.run(
+                "--spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres") + "&reWriteBatchedInserts=true",
+                "--spring.datasource.username=postgres",
+                "--spring.datasource.password=postgres",
+                "--literalura.console.enabled=false",
+                "--server.port=0",
+                "--logging.level.root=WARN",
+                // ddl-auto=update warns about constraints it cannot find in a fresh database
+                "--logging.level.org.hibernate.engine.jdbc.spi.SqlExceptionHelper=ERROR",
+                "--gutendex.cache.directory=" + workDir.resolve("gutendex-cache"),
+                "--gutendex.harvest.checkpoint-file=" + workDir.resolve("harvest.checkpoint"),
+                "--literalura.sync.checkpoint-file=" + workDir.resolve("sync.checkpoint"));
+        return new EmbeddedLibrary(postgres, context);
+    }
+
+    /**
+     * Imports made-up books, then gives every author a lifespan.
+     * @param books Number of books, with Gutendex ids 1 to books
+     * @param authors Number of distinct authors
+     */
+    void seed(int books, int authors) {
+        BookImportService importService = bean(BookImportService.class);
+        for (int from = 1; from <= books; from += SEED_CHUNK) {
+            importService.importBooks(BenchmarkData.books(from, Math.min(SEED_CHUNK, books - from + 1), authors));
+        }
+
+        AuthorRepository authorRepository = bean(AuthorRepository.class);
+        Random random = new Random(42);
+        List<Author> all = authorRepository.findAll();
+        for (Author author : all) {
+            int birthYear = 1500 + random.nextInt(450);
+            author.setBirthYear(birthYear);
+            author.setDeathYear(birthYear + 30 + random.nextInt(60));
+        }
+        authorRepository.saveAll(all);
+    }
+
+    /**
+     * Adds authors without books in one statement, much faster than importing
+     * books for them. Authors the seeded books already have are kept.
+     * @param authors Number of authors the library should have (at least the number seeded with books)
+     */
+    void seedAuthors(int authors) {
+        bean(JdbcTemplate.class).update(SEED_AUTHORS, authors - 1);
+        bean(LibraryViews.class).refresh();
+    }
+
+    <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    int port() {
+        return context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        postgres.close();
+    }
+}
@@ -0,0 +1,115 @@
+package com.alura.literalura;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Overhead of the Gutendex HTTP transport (pooling, gzip, retry and circuit
+ * breaker bookkeeping) against a local server that answers with a canned
+ * page, so the network and Gutendex itself are left out. The rate limit is
+ * raised out of the way.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class GutendexHttpClientBenchmark {
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private AnnotationConfigApplicationContext context;
+    private GutendexHttpClient httpClient;
+    private String url;
+
+    @Setup
+    public void setUp() throws IOException {
+        byte[] page = gzip(BenchmarkData.pageJson(BenchmarkData.books(1, 32, 20)));
+        // Without this the server's small writes wait on delayed ACKs (~40 ms per response)
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        serverExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext("/books/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, page.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(page);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/books/?page=1";
+
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", Map.of(
+                // The local server only speaks HTTP/1.1
+                "gutendex.http.version", "HTTP_1_1",
+                "gutendex.rate-limit.permits-per-second", "1000000",
+                "gutendex.rate-limit.burst", "1000000")));
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.registerBean(ObservationRegistry.class, ObservationRegistry::create);
+        context.register(GutendexHttpClient.class);
+        context.refresh();
+        httpClient = context.getBean(GutendexHttpClient.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        server.stop(0);
+        serverExecutor.close();
+    }
+
+    // Latency of one request at a time
+    @Benchmark
+    public String get() {
+        return httpClient.get(url);
+    }
+
+    // Latency with 64 requests in flight, sharing the connection pool
+    @Benchmark
+    @Threads(64)
+    public String getConcurrent() {
+        return httpClient.get(url);
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,83 @@
+package com.alura.literalura;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU cost of handling a Gutendex page: parsing it (whole page at once, as
+ * searches do, or streamed, as harvests do) and turning books into entities.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class GutendexParsingBenchmark {
+
+    private final GutendexService gutendexService = new GutendexService();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private String pageJson;
+    private byte[] pageBytes;
+    private GutendexBook gutendexBook;
+    private Book book;
+
+    @Setup
+    public void setUp() {
+        List<GutendexBook> books = BenchmarkData.books(1, 32, 20);
+        pageJson = BenchmarkData.pageJson(books);
+        pageBytes = pageJson.getBytes(StandardCharsets.UTF_8);
+        gutendexBook = books.get(0);
+        book = gutendexService.convertToBook(gutendexBook);
+        book.setAuthor(gutendexService.convertToAuthor(gutendexBook));
+    }
+
+    // A full 32-book page, as fetchPage/fetchCachedPage parse it
+    @Benchmark
+    public GutendexResponse readPageFromString() throws IOException {
+        return objectMapper.readValue(pageJson, GutendexResponse.class);
+    }
+
+    // The same page streamed book by book, as the harvester reads it
+    @Benchmark
+    public int streamPage(Blackhole blackhole) throws IOException {
+        return gutendexService.readPage(new ByteArrayInputStream(pageBytes), blackhole::consume).books();
+    }
+
+    @Benchmark
+    public Book convertToBook() {
+        return gutendexService.convertToBook(gutendexBook);
+    }
+
+    @Benchmark
+    public Author convertToAuthor() {
+        return gutendexService.convertToAuthor(gutendexBook);
+    }
+
+    @Benchmark
+    public long fingerprint() {
+        return gutendexService.fingerprint(gutendexBook);
+    }
+
+    @Benchmark
+    public String bookToString() {
+        return book.toString();
+    }
+}
@@ -0,0 +1,164 @@
+package com.alura.literalura;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Binary library archive against a plain JSON export of the same rows,
+ * both read from a 75,000-book library. File sizes are printed at the start.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class LibraryArchiveBenchmark {
+
+    private static final int BOOKS = 75_000;
+    private static final int AUTHORS = 25_000;
+
+    private EmbeddedLibrary library;
+    private LibraryArchive libraryArchive;
+    private LibraryReader libraryReader;
+    private TransactionTemplate transactionTemplate;
+    private Path workDir;
+    private Path archive;
+
+    @Setup
+    public void setUp() throws IOException {
+        library = EmbeddedLibrary.start(false);
+        libraryArchive = library.bean(LibraryArchive.class);
+        libraryReader = library.bean(LibraryReader.class);
+        transactionTemplate = library.bean(TransactionTemplate.class);
+
+        workDir = Files.createTempDirectory("library-archive");
+        Path dump = workDir.resolve("catalog.jsonl");
+        BenchmarkData.writeDump(dump, BOOKS, AUTHORS);
+        library.bean(CatalogDumpLoader.class).load(dump);
+
+        archive = workDir.resolve("library.llib");
+        libraryArchive.exportTo(archive);
+        Path json = workDir.resolve("library.json");
+        exportJson(json);
+        System.out.printf("%nBinary archive: %d KB, JSON: %d KB%n", Files.size(archive) / 1024, Files.size(json) / 1024);
+    }
+
+    // The import benchmark starts from an empty library every time
+    @Setup(Level.Iteration)
+    public void emptyLibraryForImport(BenchmarkParams params) {
+        if (params.getBenchmark().endsWith("importBinary")) {
+            library.bean(JdbcTemplate.class).execute("TRUNCATE books, authors CASCADE");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        library.close();
+        try (var files = Files.list(workDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(workDir);
+    }
+
+    @Benchmark
+    public LibraryArchive.ExportResult exportBinary() {
+        return libraryArchive.exportTo(workDir.resolve("export.llib"));
+    }
+
+    @Benchmark
+    public long exportJson() throws IOException {
+        return exportJson(workDir.resolve("export.json"));
+    }
+
+    @Benchmark
+    public LibraryArchive.ImportResult importBinary() {
+        return libraryArchive.importFrom(archive);
+    }
+
+    /**
+     * Writes the same rows as the archive as a JSON object with "authors" and
+     * "books" arrays, streamed with Jackson; books refer to authors by id.
+     */
+    private long exportJson(Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file);
+             JsonGenerator json = new ObjectMapper().getFactory().createGenerator(out)) {
+            transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    json.writeStartObject();
+                    json.writeArrayFieldStart("authors");
+                    libraryReader.forEachAuthor(author -> write(json, author));
+                    json.writeEndArray();
+                    json.writeArrayFieldStart("books");
+                    libraryReader.forEachBook(book -> write(json, book));
+                    json.writeEndArray();
+                    json.writeEndObject();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        return Files.size(file);
+    }
+
+    private static void write(JsonGenerator json, Author author) {
+        try {
+            json.writeStartObject();
+            json.writeNumberField("id", author.getId());
+            json.writeStringField("name", author.getName());
+            writeNullable(json, "birthYear", author.getBirthYear());
+            writeNullable(json, "deathYear", author.getDeathYear());
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void write(JsonGenerator json, Book book) {
+        try {
+            json.writeStartObject();
+            json.writeStringField("title", book.getTitle());
+            json.writeStringField("language", book.getLanguageCode());
+            writeNullable(json, "publicationYear", book.getPublicationYear());
+            writeNullable(json, "downloadCount", book.getDownloadCount());
+            json.writeNumberField("authorId", book.getAuthor() != null ? book.getAuthor().getId() : null);
+            writeNullable(json, "gutendexId", book.getGutendexId());
+            json.writeNumberField("contentFingerprint", book.getContentFingerprint());
+            json.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeNullable(JsonGenerator json, String field, Integer value) throws IOException {
+        if (value != null) {
+            json.writeNumberField(field, value);
+        } else {
+            json.writeNullField(field);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.alura.literalura;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Repository and import paths against an embedded PostgreSQL holding a
+ * seeded library, with the second-level cache on as in production.
+ * The library has 10k books and 10k to 1M authors (those beyond the books'
+ * authors have no books), for the "alive in year" index against the query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LibraryPersistenceBenchmark {
+
+    private static final int SEED_BOOKS = 10_000;
+    private static final int IMPORT_BATCH = 500;
+    private static final int YEAR = 1850;
+    private static final int WRITTEN_AUTHORS = 1000;
+
+    @Param({"10000", "100000", "1000000"})
+    public int seedAuthors;
+
+    private EmbeddedLibrary library;
+    private BookRepository bookRepository;
+    private AuthorRepository authorRepository;
+    private BookImportService bookImportService;
+    private AuthorLifespanIndex authorLifespanIndex;
+    private SecondLevelCache secondLevelCache;
+
+    private Long bookId;
+    private Author author;
+    private Language english;
+    private final AtomicInteger nextGutendexId = new AtomicInteger(SEED_BOOKS + 1);
+    // Authors whose lifespans the write benchmarks change, one after the other
+    private List<Long> writtenAuthorIds;
+    private final AtomicInteger nextWrite = new AtomicInteger();
+
+    @Setup
+    public void setUp() throws IOException {
+        library = EmbeddedLibrary.start(false);
+        library.seed(SEED_BOOKS, seedAuthors);
+        library.seedAuthors(seedAuthors);
+        bookRepository = library.bean(BookRepository.class);
+        authorRepository = library.bean(AuthorRepository.class);
+        bookImportService = library.bean(BookImportService.class);
+        authorLifespanIndex = library.bean(AuthorLifespanIndex.class);
+        secondLevelCache = library.bean(SecondLevelCache.class);
+
+        Book anyBook = bookRepository.findByIdGreaterThanOrderByIdAsc(0L, Limit.of(1)).get(0);
+        bookId = anyBook.getId();
+        author = anyBook.getAuthor();
+        english = library.bean(DictionaryResolver.class).languages(List.of("en")).get(0);
+        writtenAuthorIds = library.bean(JdbcTemplate.class)
+                .queryForList("SELECT id FROM authors ORDER BY id LIMIT " + WRITTEN_AUTHORS, Long.class);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        library.close();
+    }
+
+    @Benchmark
+    public Book saveBook() {
+        Book book = new Book("Benchmark book");
+        book.setLanguage(english);
+        book.setAuthor(author);
+        book.getAuthors().add(author);
+        return bookRepository.save(book);
+    }
+
+    // Answered by the entity cache after the first call
+    @Benchmark
+    public Optional<Book> findById() {
+        return bookRepository.findById(bookId);
+    }
+
+    // Answered by the query cache until books change
+    @Benchmark
+    public List<Book> findByLanguage() {
+        return bookRepository.findByLanguageIgnoreCase("fi");
+    }
+
+    @Benchmark
+    public List<BookSummary> findSummariesByLanguage() {
+        return bookRepository.findSummariesByLanguage("fi");
+    }
+
+    // Time per book of a batched import of new books by known authors; books/second = 1 / time
+    @Benchmark
+    @OperationsPerInvocation(IMPORT_BATCH)
+    public BookImportService.ImportResult importBooks() {
+        return bookImportService.importBooks(
+                BenchmarkData.books(nextGutendexId.getAndAdd(IMPORT_BATCH), IMPORT_BATCH, seedAuthors));
+    }
+
+    @Benchmark
+    public List<Long> aliveInYearIndex() {
+        return authorLifespanIndex.aliveIn(YEAR);
+    }
+
+    // A query right after a write, as when authors are imported while others are browsing:
+    // the write has to be seen without rebuilding the index
+    @Benchmark
+    public List<Long> aliveInYearIndexAfterWrite() {
+        authorLifespanIndex.put(nextWrittenAuthor());
+        return authorLifespanIndex.aliveIn(YEAR);
+    }
+
+    @Benchmark
+    public Map<Integer, Integer> aliveByDecadeIndexAfterWrite() {
+        authorLifespanIndex.put(nextWrittenAuthor());
+        return authorLifespanIndex.aliveByDecade(1500, 2000);
+    }
+
+    // The query cache is dropped first, so this measures the database query
+    @Benchmark
+    public List<Author> aliveInYearQuery() {
+        secondLevelCache.evictAuthorQueries();
+        return authorRepository.findAuthorsAliveInYear(YEAR);
+    }
+
+    // The index only: the authors table keeps its years
+    private Author nextWrittenAuthor() {
+        int write = nextWrite.getAndIncrement();
+        Author author = new Author();
+        author.setId(writtenAuthorIds.get(write % writtenAuthorIds.size()));
+        author.setBirthYear(1500 + write % 450);
+        author.setDeathYear(1500 + write % 450 + 30 + write % 60);
+        return author;
+    }
+}
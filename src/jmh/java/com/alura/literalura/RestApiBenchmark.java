@@ -0,0 +1,85 @@
+package com.alura.literalura;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the REST API: many concurrent clients against the running
+ * application and an embedded PostgreSQL. Sample-time mode reports the
+ * latency distribution (p50, p90, p99, ...) of every endpoint.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(32)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class RestApiBenchmark {
+
+    private EmbeddedLibrary library;
+    private HttpClient client;
+    private URI booksPage;
+    private URI search;
+    private URI aliveInYear;
+
+    @Setup
+    public void setUp() throws IOException {
+        library = EmbeddedLibrary.start(true);
+        library.seed(10_000, 1_000);
+
+        client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+        String base = "http://localhost:" + library.port() + "/api";
+        booksPage = URI.create(base + "/books?page=3&size=20");
+        search = URI.create(base + "/books/search?q=pride%20war");
+        aliveInYear = URI.create(base + "/authors/alive?year=1850");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        client.close();
+        library.close();
+    }
+
+    @Benchmark
+    public int listBooks() throws IOException, InterruptedException {
+        return get(booksPage);
+    }
+
+    @Benchmark
+    public int searchBooks() throws IOException, InterruptedException {
+        return get(search);
+    }
+
+    @Benchmark
+    public int authorsAliveInYear() throws IOException, InterruptedException {
+        return get(aliveInYear);
+    }
+
+    private int get(URI uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(uri).header("Accept-Encoding", "gzip").GET().build();
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("HTTP " + response.statusCode() + " from " + uri);
+        }
+        return response.body().length;
+    }
+}
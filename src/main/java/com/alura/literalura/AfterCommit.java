@@ -0,0 +1,32 @@
+package com.alura.literalura;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Runs work once the current transaction has committed.
+ * Used to update in-memory views of the database (search index, counters)
+ * only with changes that were really saved.
+ */
+public final class AfterCommit {
+
+    private AfterCommit() {}
+
+    /**
+     * Runs the task after the current transaction commits, or right away
+     * when there is no transaction. Nothing runs if the transaction rolls back.
+     * @param task The work to run
+     */
+    public static void run(Runnable task) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        } else {
+            task.run();
+        }
+    }
+}
@@ -1,22 +1,32 @@
 package com.alura.literalura;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 /**
  * Represents an author in our book library.
  * Simple class with basic information about authors.
  */
 @Entity
+@Cacheable
+@org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "authors")
+@EntityListeners(AuthorIndexListener.class)
 public class Author {
 
+    // Sequence ids (allocated 50 at a time) let Hibernate batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "author_seq")
+    @SequenceGenerator(name = "author_seq", sequenceName = "authors_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
     private String name;
 
+    // Lowercase, accent-free form of the name; one row per normalized name
+    @Column(unique = true)
+    private String normalizedName;
+
     private Integer birthYear;
 
     private Integer deathYear;
@@ -26,7 +36,7 @@ public class Author {
 
     // Constructor with name
     public Author(String name) {
-        this.name = name;
+        setName(name);
     }
 
     // Getters and setters
@@ -44,6 +54,15 @@ public class Author {
 
     public void setName(String name) {
         this.name = name;
+        this.normalizedName = AuthorResolver.normalize(name);
+    }
+
+    public String getNormalizedName() {
+        return normalizedName;
+    }
+
+    public void setNormalizedName(String normalizedName) {
+        this.normalizedName = normalizedName;
     }
 
     public Integer getBirthYear() {
@@ -0,0 +1,31 @@
+package com.alura.literalura;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Keeps the AuthorLifespanIndex in sync with the authors table.
+ * Hibernate calls it whenever an author is saved or deleted; the index is
+ * only changed once the transaction has committed.
+ */
+public class AuthorIndexListener {
+
+    // Looked up lazily: the index needs the repositories, which need this listener
+    @Autowired
+    private ObjectProvider<AuthorLifespanIndex> lifespanIndex;
+
+    @PostPersist
+    @PostUpdate
+    public void authorSaved(Author author) {
+        AfterCommit.run(() -> lifespanIndex.getObject().put(author));
+    }
+
+    @PostRemove
+    public void authorRemoved(Author author) {
+        Long authorId = author.getId();
+        AfterCommit.run(() -> lifespanIndex.getObject().remove(authorId));
+    }
+}
@@ -0,0 +1,458 @@
+package com.alura.literalura;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * In-memory index of author lifespans, for "who was alive in year X" queries.
+ * A missing birth year counts as "always born" and a missing death year as
+ * "still alive", the same as AuthorRepository.findAuthorsAliveInYear.
+ *
+ * Lifespans are kept as an interval tree laid out in an array sorted by
+ * birth year, which finds the k matching authors in O(log n + k). Counting
+ * queries (and the per-decade histogram) only need two binary searches
+ * over the sorted birth and death years. Changes don't rebuild the arrays:
+ * they are kept next to them (new lifespans, and the array entries they
+ * replace) and checked by every query, until there are enough of them to
+ * be merged into new arrays in one linear pass.
+ */
+@Component
+public class AuthorLifespanIndex {
+
+    private static final int LOAD_PAGE_SIZE = 1000;
+    // Queries scan the pending changes, so they are merged into the arrays before there are too many
+    private static final int MAX_PENDING_CHANGES = 1024;
+
+    @Autowired
+    private LibraryReader libraryReader;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock: every current lifespan, by author id
+    private Map<Long, Lifespan> lifespans = new HashMap<>();
+    // Guarded by lock: the arrays, plus the lifespans added since they were built
+    // and the array entries that no longer hold (updated or removed authors)
+    private Snapshot snapshot = Snapshot.build(new ArrayList<>());
+    private final Map<Long, Lifespan> added = new HashMap<>();
+    private final Map<Long, Lifespan> replaced = new HashMap<>();
+    // Guarded by lock; while a rebuild is loading, the changes it may have missed
+    private List<Change> changesDuringRebuild;
+
+    /**
+     * Loads every author into new arrays (when the application starts, and
+     * after bulk loads) and swaps them in. Queries are only blocked for the swap.
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    public synchronized void rebuild() {
+        lock.writeLock().lock();
+        try {
+            changesDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Map<Long, Lifespan> fresh = new HashMap<>();
+        Snapshot built = null;
+        try {
+            libraryReader.forEachAuthorPage(LOAD_PAGE_SIZE, page -> page.forEach(author ->
+                    fresh.put(author.getId(), Lifespan.of(author.getId(), author.getBirthYear(), author.getDeathYear()))));
+            built = Snapshot.build(new ArrayList<>(fresh.values()));
+        } finally {
+            lock.writeLock().lock();
+            try {
+                // A failed load keeps the old index
+                if (built != null) {
+                    lifespans = fresh;
+                    snapshot = built;
+                    added.clear();
+                    replaced.clear();
+                    changesDuringRebuild.forEach(change -> apply(change.authorId(), change.lifespan()));
+                }
+                changesDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Adds or updates an author's lifespan.
+     * @param author The saved author
+     */
+    public void put(Author author) {
+        Lifespan lifespan = Lifespan.of(author.getId(), author.getBirthYear(), author.getDeathYear());
+        change(lifespan.authorId(), current -> lifespan);
+    }
+
+    /**
+     * Adds an author with unknown years, unless the author is already indexed.
+     * @param authorId Id of the author
+     */
+    public void putIfAbsent(Long authorId) {
+        change(authorId, current -> current != null ? current : Lifespan.of(authorId, null, null));
+    }
+
+    /**
+     * Fills in the years an indexed author doesn't have yet, the same way
+     * AuthorResolver's upsert does in the database.
+     * @param authorId Id of the author
+     * @param birthYear Birth year, or null to keep the current one
+     * @param deathYear Death year, or null to keep the current one
+     */
+    public void fillYears(Long authorId, Integer birthYear, Integer deathYear) {
+        change(authorId, current -> current == null ? null : new Lifespan(authorId,
+                current.start() == Integer.MIN_VALUE && birthYear != null ? birthYear : current.start(),
+                current.end() == Integer.MAX_VALUE && deathYear != null ? deathYear : current.end()));
+    }
+
+    /**
+     * Removes a deleted author.
+     * @param authorId Id of the author
+     */
+    public void remove(Long authorId) {
+        change(authorId, current -> null);
+    }
+
+    /**
+     * @param year The year
+     * @return Ids of the authors alive in that year, ordered by birth year
+     */
+    public List<Long> aliveIn(int year) {
+        return aliveBetween(year, year);
+    }
+
+    /**
+     * @param fromYear First year of the range
+     * @param toYear Last year of the range
+     * @return Ids of the authors alive at some point in the range, ordered by birth year
+     */
+    public List<Long> aliveBetween(int fromYear, int toYear) {
+        lock.readLock().lock();
+        try {
+            IntStream.Builder positions = IntStream.builder();
+            snapshot.collect(0, snapshot.size(), fromYear, toYear, positions);
+            List<Lifespan> extra = overlapping(added, fromYear, toYear);
+            extra.sort(Lifespan.ORDER);
+
+            // Both are ordered by birth year; merged, leaving out array entries that no longer hold
+            List<Long> ids = new ArrayList<>();
+            int next = 0;
+            for (int position : positions.build().toArray()) {
+                while (next < extra.size() && snapshot.isAfter(position, extra.get(next))) {
+                    ids.add(extra.get(next++).authorId());
+                }
+                long authorId = snapshot.authorId(position);
+                if (!replaced.containsKey(authorId)) {
+                    ids.add(authorId);
+                }
+            }
+            for (; next < extra.size(); next++) {
+                ids.add(extra.get(next).authorId());
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param year The year
+     * @return How many authors were alive in that year
+     */
+    public int countAliveIn(int year) {
+        lock.readLock().lock();
+        try {
+            return countOverlapping(year, year);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts authors alive during each decade of a range.
+     * An author alive for any part of a decade counts for that decade.
+     * @param fromYear First year of the range (rounded down to a decade)
+     * @param toYear Last year of the range
+     * @return Author count per decade start year, in order
+     */
+    public Map<Integer, Integer> aliveByDecade(int fromYear, int toYear) {
+        lock.readLock().lock();
+        try {
+            Map<Integer, Integer> histogram = new LinkedHashMap<>();
+            for (int decade = Math.floorDiv(fromYear, 10) * 10; decade <= toYear; decade += 10) {
+                histogram.put(decade, countOverlapping(decade, decade + 9));
+            }
+            return histogram;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of indexed authors
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return lifespans.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void change(Long authorId, UnaryOperator<Lifespan> update) {
+        lock.writeLock().lock();
+        try {
+            Lifespan lifespan = update.apply(lifespans.get(authorId));
+            if (!Objects.equals(lifespan, lifespans.get(authorId))) {
+                apply(authorId, lifespan);
+                if (changesDuringRebuild != null) {
+                    changesDuringRebuild.add(new Change(authorId, lifespan));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets an author's lifespan (null removes the author). Must hold the write lock.
+     */
+    private void apply(Long authorId, Lifespan lifespan) {
+        Lifespan previous = lifespan != null ? lifespans.put(authorId, lifespan) : lifespans.remove(authorId);
+        // A previous lifespan that wasn't added since the arrays were built is in the arrays
+        if (added.remove(authorId) == null && previous != null) {
+            replaced.put(authorId, previous);
+        }
+        if (lifespan != null) {
+            added.put(authorId, lifespan);
+        }
+        if (added.size() + replaced.size() > MAX_PENDING_CHANGES) {
+            snapshot = snapshot.merge(replaced.values(), added.values());
+            added.clear();
+            replaced.clear();
+        }
+    }
+
+    // Must hold the lock
+    private int countOverlapping(int from, int to) {
+        return snapshot.countOverlapping(from, to)
+               - overlapping(replaced, from, to).size()
+               + overlapping(added, from, to).size();
+    }
+
+    private static List<Lifespan> overlapping(Map<Long, Lifespan> lifespans, int from, int to) {
+        List<Lifespan> matches = new ArrayList<>();
+        for (Lifespan lifespan : lifespans.values()) {
+            if (lifespan.start() <= to && lifespan.end() >= from) {
+                matches.add(lifespan);
+            }
+        }
+        return matches;
+    }
+
+    private record Change(Long authorId, Lifespan lifespan) {}
+
+    private record Lifespan(long authorId, int start, int end) {
+
+        // The order of the arrays
+        static final Comparator<Lifespan> ORDER =
+                Comparator.comparingInt(Lifespan::start).thenComparingLong(Lifespan::authorId);
+
+        static Lifespan of(Long authorId, Integer birthYear, Integer deathYear) {
+            return new Lifespan(authorId,
+                    birthYear != null ? birthYear : Integer.MIN_VALUE,
+                    deathYear != null ? deathYear : Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Immutable arrays answering queries for one state of the index.
+     */
+    private static final class Snapshot {
+
+        // Lifespans sorted by start; the middle of any range [lo, hi) is the root of its subtree
+        private final long[] ids;
+        private final int[] starts;
+        private final int[] ends;
+        // Latest end within the subtree rooted at each position
+        private final int[] maxEnds;
+        private final int[] sortedEnds;
+
+        private Snapshot(long[] ids, int[] starts, int[] ends, int[] sortedEnds) {
+            this.ids = ids;
+            this.starts = starts;
+            this.ends = ends;
+            this.maxEnds = new int[ids.length];
+            this.sortedEnds = sortedEnds;
+            fillMaxEnds(0, ids.length);
+        }
+
+        static Snapshot build(List<Lifespan> lifespans) {
+            lifespans.sort(Lifespan.ORDER);
+            long[] ids = new long[lifespans.size()];
+            int[] starts = new int[lifespans.size()];
+            int[] ends = new int[lifespans.size()];
+            for (int i = 0; i < lifespans.size(); i++) {
+                ids[i] = lifespans.get(i).authorId();
+                starts[i] = lifespans.get(i).start();
+                ends[i] = lifespans.get(i).end();
+            }
+            int[] sortedEnds = ends.clone();
+            Arrays.sort(sortedEnds);
+            return new Snapshot(ids, starts, ends, sortedEnds);
+        }
+
+        /**
+         * New arrays without some entries and with some new lifespans, in one
+         * pass over the current ones (only the changes are sorted).
+         * @param removed Entries of these arrays that no longer hold
+         * @param added Lifespans to add
+         */
+        Snapshot merge(Collection<Lifespan> removed, Collection<Lifespan> added) {
+            List<Lifespan> sortedAdded = new ArrayList<>(added);
+            sortedAdded.sort(Lifespan.ORDER);
+            Set<Long> removedIds = new HashSet<>();
+            removed.forEach(lifespan -> removedIds.add(lifespan.authorId()));
+
+            int size = ids.length - removed.size() + sortedAdded.size();
+            long[] mergedIds = new long[size];
+            int[] mergedStarts = new int[size];
+            int[] mergedEnds = new int[size];
+            int count = 0;
+            int next = 0;
+            for (int i = 0; i < ids.length; i++) {
+                while (next < sortedAdded.size() && isAfter(i, sortedAdded.get(next))) {
+                    Lifespan lifespan = sortedAdded.get(next++);
+                    mergedIds[count] = lifespan.authorId();
+                    mergedStarts[count] = lifespan.start();
+                    mergedEnds[count++] = lifespan.end();
+                }
+                if (!removedIds.contains(ids[i])) {
+                    mergedIds[count] = ids[i];
+                    mergedStarts[count] = starts[i];
+                    mergedEnds[count++] = ends[i];
+                }
+            }
+            for (; next < sortedAdded.size(); next++) {
+                Lifespan lifespan = sortedAdded.get(next);
+                mergedIds[count] = lifespan.authorId();
+                mergedStarts[count] = lifespan.start();
+                mergedEnds[count++] = lifespan.end();
+            }
+
+            int[] removedEnds = removed.stream().mapToInt(Lifespan::end).sorted().toArray();
+            int[] addedEnds = sortedAdded.stream().mapToInt(Lifespan::end).sorted().toArray();
+            return new Snapshot(mergedIds, mergedStarts, mergedEnds, mergeSorted(sortedEnds, removedEnds, addedEnds));
+        }
+
+        // Sorted values of "values", minus one occurrence of each of "removed", plus "added"
+        private static int[] mergeSorted(int[] values, int[] removed, int[] added) {
+            int[] merged = new int[values.length - removed.length + added.length];
+            int count = 0;
+            int r = 0;
+            int a = 0;
+            for (int value : values) {
+                if (r < removed.length && removed[r] == value) {
+                    r++;
+                    continue;
+                }
+                while (a < added.length && added[a] < value) {
+                    merged[count++] = added[a++];
+                }
+                merged[count++] = value;
+            }
+            while (a < added.length) {
+                merged[count++] = added[a++];
+            }
+            return merged;
+        }
+
+        int size() {
+            return ids.length;
+        }
+
+        long authorId(int position) {
+            return ids[position];
+        }
+
+        // Whether a lifespan comes before the entry at a position, in the order of the arrays
+        boolean isAfter(int position, Lifespan lifespan) {
+            return starts[position] != lifespan.start()
+                    ? starts[position] > lifespan.start()
+                    : ids[position] > lifespan.authorId();
+        }
+
+        private int fillMaxEnds(int lo, int hi) {
+            if (lo >= hi) {
+                return Integer.MIN_VALUE;
+            }
+            int mid = (lo + hi) >>> 1;
+            maxEnds[mid] = Math.max(ends[mid], Math.max(fillMaxEnds(lo, mid), fillMaxEnds(mid + 1, hi)));
+            return maxEnds[mid];
+        }
+
+        /**
+         * Adds the positions of lifespans overlapping [from, to] in the subtree [lo, hi),
+         * in order. Skips subtrees that end too early, and everything right of a start that is too late.
+         */
+        void collect(int lo, int hi, int from, int to, IntStream.Builder out) {
+            if (lo >= hi) {
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            if (maxEnds[mid] < from) {
+                return;
+            }
+            collect(lo, mid, from, to, out);
+            if (starts[mid] <= to) {
+                if (ends[mid] >= from) {
+                    out.add(mid);
+                }
+                collect(mid + 1, hi, from, to, out);
+            }
+        }
+
+        /**
+         * Lifespans overlapping [from, to]: those starting by "to",
+         * minus those that had already ended before "from".
+         */
+        int countOverlapping(int from, int to) {
+            int startedByEnd = upperBound(starts, to);
+            int endedBeforeStart = upperBound(sortedEnds, from - 1);
+            return startedByEnd - endedBeforeStart;
+        }
+
+        // Number of values <= key in a sorted array
+        private static int upperBound(int[] sorted, int key) {
+            int lo = 0;
+            int hi = sorted.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (sorted[mid] <= key) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+}
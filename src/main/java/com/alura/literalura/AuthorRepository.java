@@ -1,9 +1,16 @@
 package com.alura.literalura;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.stream.Stream;
+import java.util.Optional;
 
 /**
  * Handles database operations for authors.
@@ -12,12 +19,55 @@ import java.util.List;
 @Repository
 public interface AuthorRepository extends JpaRepository<Author, Long> {
 
-    // Find authors by name (case insensitive)
+    // Finder results are kept in the "author-queries" cache region. AuthorResolver inserts
+    // authors with native SQL, bypassing Hibernate, so it evicts that region (see SecondLevelCache).
+
+    // Find authors by name (case insensitive); lower() so the trigram index on lower(name) is used
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = SecondLevelCache.AUTHOR_QUERIES)
+    })
+    @Query("SELECT a FROM Author a WHERE lower(a.name) LIKE lower(concat('%', :name, '%'))")
     List<Author> findByNameContainingIgnoreCase(String name);
 
+    // Typo-tolerant author search, most similar first (trigram similarity)
+    @Query(value = "SELECT * FROM authors " +
+                   "WHERE lower(name) % lower(:name) " +
+                   "ORDER BY similarity(lower(name), lower(:name)) DESC, id " +
+                   "LIMIT :limit", nativeQuery = true)
+    List<Author> searchByNameSimilarity(String name, int limit);
+
+    // Find an author by normalized name (see AuthorResolver.normalize)
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = SecondLevelCache.AUTHOR_QUERIES)
+    })
+    Optional<Author> findByNormalizedName(String normalizedName);
+
+    // Authors saved before names were normalized
+    List<Author> findByNormalizedNameIsNull();
+
     // Find authors alive in a specific year
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_REGION, value = SecondLevelCache.AUTHOR_QUERIES)
+    })
     @Query("SELECT a FROM Author a WHERE " +
            "(a.birthYear IS NULL OR a.birthYear <= :year) AND " +
            "(a.deathYear IS NULL OR a.deathYear >= :year)")
     List<Author> findAuthorsAliveInYear(Integer year);
+
+    // Next page of authors after the given id (keyset pagination; pass 0 for the first page), bypassing the cache
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE"))
+    List<Author> findByIdGreaterThanOrderByIdAsc(Long lastId, Limit limit);
+
+    // All authors as a stream, read in chunks of 500 rows. Needs an open (read-only) transaction.
+    // Full scans bypass the second-level cache so they don't push out the hot entries.
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE")
+    })
+    @Query("SELECT a FROM Author a ORDER BY a.id")
+    Stream<Author> streamAll();
 }
@@ -0,0 +1,225 @@
+package com.alura.literalura;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Connection;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Maps author names to author ids so the same person is only stored once.
+ * Names are compared in normalized form ("Dickens, Charles" and "DICKENS,  Charles"
+ * are the same author). Known ids are kept in memory (see KnownIds), so each
+ * distinct author costs at most one database call; new authors are inserted
+ * with an upsert in the caller's transaction, which also covers two imports
+ * adding the same author at the same time. Authors are upserted in sorted
+ * order, so those two imports lock them in the same order and can't deadlock.
+ */
+@Component
+public class AuthorResolver {
+
+    private static final Logger log = LoggerFactory.getLogger(AuthorResolver.class);
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N},]+");
+
+    // Years the stored author doesn't have yet are filled in from the given ones
+    private static final String UPSERT_AUTHORS =
+            "INSERT INTO authors (id, name, normalized_name, birth_year, death_year) " +
+            "SELECT nextval('authors_seq'), t.name, t.normalized_name, t.birth_year, t.death_year " +
+            "FROM unnest(?::text[], ?::text[], ?::int[], ?::int[]) AS t(name, normalized_name, birth_year, death_year) " +
+            "ORDER BY t.normalized_name " +
+            "ON CONFLICT (normalized_name) DO UPDATE SET " +
+            "birth_year = coalesce(authors.birth_year, EXCLUDED.birth_year), " +
+            "death_year = coalesce(authors.death_year, EXCLUDED.death_year) " +
+            "RETURNING id, normalized_name";
+
+    // book_authors is native to Book's @ManyToMany, so the bulk JPQL in reassignAuthor doesn't touch it
+    private static final String REASSIGN_AUTHOR_LINKS =
+            "UPDATE book_authors SET author_id = ? WHERE author_id = ANY(?::bigint[])";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AuthorRepository authorRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private AuthorLifespanIndex lifespanIndex;
+
+    @Autowired
+    private SecondLevelCache secondLevelCache;
+
+    private final KnownIds idsByName = new KnownIds();
+
+    /**
+     * Returns the id of the author with this name, creating the author if needed.
+     * @param name The author name as given by the source
+     * @return Id of the stored author
+     */
+    public Long resolve(String name) {
+        return resolve(name, null, null);
+    }
+
+    /**
+     * Returns the id of the author with this name, creating the author if needed.
+     * Years are saved the first time the author is resolved, unless the stored
+     * author already has them.
+     * @param name The author name as given by the source
+     * @param birthYear Birth year, or null if unknown
+     * @param deathYear Death year, or null if unknown (or still alive)
+     * @return Id of the stored author
+     */
+    public Long resolve(String name, Integer birthYear, Integer deathYear) {
+        Author author = new Author(name);
+        author.setBirthYear(birthYear);
+        author.setDeathYear(deathYear);
+        resolveAll(List.of(author));
+        return author.getId();
+    }
+
+    /**
+     * Sets the id of every author, creating the ones the library doesn't have
+     * yet with one statement. Years are saved as in resolve(name, birthYear, deathYear).
+     * @param authors Authors with a name (and maybe years); their ids are set
+     */
+    public void resolveAll(Collection<Author> authors) {
+        // The first author with a given name decides the years of a new row
+        Map<String, Author> missing = new TreeMap<>();
+        for (Author author : authors) {
+            String normalizedName = normalize(author.getName());
+            Long id = idsByName.get(normalizedName);
+            if (id == null) {
+                missing.putIfAbsent(normalizedName, author);
+            }
+            author.setId(id);
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        List<Author> rows = new ArrayList<>(missing.values());
+        Map<String, Long> upserted = new HashMap<>();
+        jdbcTemplate.query(UPSERT_AUTHORS, ps -> {
+            Connection connection = ps.getConnection();
+            ps.setArray(1, connection.createArrayOf("text", rows.stream().map(a -> a.getName().trim()).toArray()));
+            ps.setArray(2, connection.createArrayOf("text", missing.keySet().toArray()));
+            ps.setArray(3, connection.createArrayOf("integer", rows.stream().map(Author::getBirthYear).toArray()));
+            ps.setArray(4, connection.createArrayOf("integer", rows.stream().map(Author::getDeathYear).toArray()));
+        }, rs -> {
+            upserted.put(rs.getString("normalized_name"), rs.getLong("id"));
+        });
+        idsByName.putAll(upserted);
+
+        for (Author author : authors) {
+            if (author.getId() == null) {
+                author.setId(upserted.get(normalize(author.getName())));
+            }
+        }
+
+        // The upsert is native SQL, so entity listeners and the caches don't see new authors or years
+        AfterCommit.run(() -> {
+            missing.forEach((normalizedName, row) -> {
+                Long id = upserted.get(normalizedName);
+                lifespanIndex.putIfAbsent(id);
+                if (row.getBirthYear() != null || row.getDeathYear() != null) {
+                    lifespanIndex.fillYears(id, row.getBirthYear(), row.getDeathYear());
+                    secondLevelCache.evictAuthor(id);
+                }
+            });
+            secondLevelCache.evictAuthorQueries();
+        });
+    }
+
+    /**
+     * Forgets all known ids, e.g. after authors were deleted or merged.
+     */
+    public void clear() {
+        idsByName.clear();
+    }
+
+    /**
+     * Normalizes an author name for comparison: no accents, lowercase,
+     * punctuation other than commas removed and whitespace collapsed.
+     * @param name The author name
+     * @return Normalized name, or null for a null name
+     */
+    public static String normalize(String name) {
+        if (name == null) {
+            return null;
+        }
+        String withoutAccents = DIACRITICS.matcher(Normalizer.normalize(name, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.matcher(withoutAccents.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    /**
+     * Fills in the normalized name of authors stored before it existed.
+     * Runs when the application has started, before the console menu opens,
+     * and before the in-memory indexes are built: the bulk updates skip the
+     * entity listeners, so the indexes must load the merged authors.
+     * Authors that turn out to be duplicates are merged into the first one,
+     * and their books (author_id and book_authors links) are moved over.
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @Transactional
+    public void backfillNormalizedNames() {
+        List<Author> unnormalized = authorRepository.findByNormalizedNameIsNull();
+        if (unnormalized.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<Author>> byName = new LinkedHashMap<>();
+        for (Author author : unnormalized) {
+            byName.computeIfAbsent(normalize(author.getName()), key -> new ArrayList<>()).add(author);
+        }
+
+        int merged = 0;
+        for (Map.Entry<String, List<Author>> entry : byName.entrySet()) {
+            List<Author> duplicates = entry.getValue();
+            Author survivor = authorRepository.findByNormalizedName(entry.getKey()).orElse(null);
+            if (survivor == null) {
+                survivor = duplicates.remove(0);
+                survivor.setNormalizedName(entry.getKey());
+            }
+
+            if (!duplicates.isEmpty()) {
+                bookRepository.reassignAuthor(survivor, duplicates);
+                reassignAuthorLinks(survivor, duplicates);
+                authorRepository.deleteAll(duplicates);
+                merged += duplicates.size();
+            }
+        }
+
+        log.info("Normalized {} author names, merged {} duplicates", unnormalized.size(), merged);
+    }
+
+    // Links of the duplicates (e.g. made by db/book-relations.sql) would otherwise block their delete
+    private void reassignAuthorLinks(Author survivor, List<Author> duplicates) {
+        Object[] duplicateIds = duplicates.stream().map(Author::getId).toArray();
+        jdbcTemplate.update(REASSIGN_AUTHOR_LINKS, ps -> {
+            ps.setLong(1, survivor.getId());
+            ps.setArray(2, ps.getConnection().createArrayOf("int8", duplicateIds));
+        });
+    }
+}
@@ -0,0 +1,11 @@
+package com.alura.literalura;
+
+/**
+ * JSON view of an author for the REST API.
+ */
+public record AuthorView(Long id, String name, Integer birthYear, Integer deathYear) {
+
+    public static AuthorView of(Author author) {
+        return new AuthorView(author.getId(), author.getName(), author.getBirthYear(), author.getDeathYear());
+    }
+}
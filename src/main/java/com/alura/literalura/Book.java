@@ -1,30 +1,76 @@
 package com.alura.literalura;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Represents a book in our library.
  * Simple class with basic book information.
  */
 @Entity
+@Cacheable
+@org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "books")
+@EntityListeners({BookIndexListener.class, BookStatisticsListener.class, BookLanguageListener.class})
 public class Book {
 
+    // Sequence ids (allocated 50 at a time) let Hibernate batch inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "book_seq")
+    @SequenceGenerator(name = "book_seq", sequenceName = "books_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
     private String title;
 
-    private String language;
+    // First of the book's languages, stored as the id of its row in the languages table
+    @ManyToOne
+    @JoinColumn(name = "language_id")
+    private Language language;
 
     private Integer publicationYear;
 
+    // First of the book's authors
     @ManyToOne
     @JoinColumn(name = "author_id")
     private Author author;
 
+    // Every author, in Gutendex order (the first one is also "author")
+    @ManyToMany
+    @JoinTable(name = "book_authors",
+            joinColumns = @JoinColumn(name = "book_id"),
+            inverseJoinColumns = @JoinColumn(name = "author_id"))
+    @OrderColumn(name = "position")
+    private List<Author> authors = new ArrayList<>();
+
+    @ManyToMany
+    @JoinTable(name = "book_languages",
+            joinColumns = @JoinColumn(name = "book_id"),
+            inverseJoinColumns = @JoinColumn(name = "language_id"))
+    private Set<Language> languages = new LinkedHashSet<>();
+
+    @ManyToMany
+    @JoinTable(name = "book_subjects",
+            joinColumns = @JoinColumn(name = "book_id"),
+            inverseJoinColumns = @JoinColumn(name = "subject_id"))
+    private Set<Subject> subjects = new LinkedHashSet<>();
+
+    // Id of the book in Gutendex (null for books added by hand)
+    @Column(unique = true)
+    private Integer gutendexId;
+
+    // Gutendex download count when the book was imported (null for books added by hand)
+    private Integer downloadCount;
+
+    // Hash of the Gutendex data this book was built from, to spot changes when syncing
+    private Long contentFingerprint;
+
     // Default constructor
     public Book() {}
 
@@ -50,14 +96,27 @@ public class Book {
         this.title = title;
     }
 
-    public String getLanguage() {
+    public Language getLanguage() {
         return language;
     }
 
-    public void setLanguage(String language) {
+    public void setLanguage(Language language) {
         this.language = language;
     }
 
+    // Code of the first language ("en"), or null
+    public String getLanguageCode() {
+        return language != null ? language.getCode() : null;
+    }
+
+    public Integer getDownloadCount() {
+        return downloadCount;
+    }
+
+    public void setDownloadCount(Integer downloadCount) {
+        this.downloadCount = downloadCount;
+    }
+
     public Integer getPublicationYear() {
         return publicationYear;
     }
@@ -74,10 +133,58 @@ public class Book {
         this.author = author;
     }
 
+    public List<Author> getAuthors() {
+        return authors;
+    }
+
+    public void setAuthors(List<Author> authors) {
+        this.authors = authors;
+    }
+
+    // Every author's name, in order ("Austen, Jane; Doe, John"), or null if the book has none
+    public String getAuthorNames() {
+        if (authors.isEmpty()) {
+            return author != null ? author.getName() : null;
+        }
+        return authors.stream().map(Author::getName).collect(Collectors.joining("; "));
+    }
+
+    public Set<Language> getLanguages() {
+        return languages;
+    }
+
+    public void setLanguages(Set<Language> languages) {
+        this.languages = languages;
+    }
+
+    public Set<Subject> getSubjects() {
+        return subjects;
+    }
+
+    public void setSubjects(Set<Subject> subjects) {
+        this.subjects = subjects;
+    }
+
+    public Integer getGutendexId() {
+        return gutendexId;
+    }
+
+    public void setGutendexId(Integer gutendexId) {
+        this.gutendexId = gutendexId;
+    }
+
+    public Long getContentFingerprint() {
+        return contentFingerprint;
+    }
+
+    public void setContentFingerprint(Long contentFingerprint) {
+        this.contentFingerprint = contentFingerprint;
+    }
+
     @Override
     public String toString() {
         return "Book: " + title + 
-               (language != null ? " [" + language + "]" : "") +
+               (language != null ? " [" + language.getCode() + "]" : "") +
                (author != null ? " by " + author.getName() : "");
     }
 }
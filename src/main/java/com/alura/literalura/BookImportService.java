@@ -0,0 +1,150 @@
+package com.alura.literalura;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves Gutendex books into the library in bulk.
+ * Books are written in JDBC batches instead of one row at a time, duplicates
+ * (inside the same import or already in the library) are only written once,
+ * authors are matched to existing ones through the AuthorResolver, and
+ * languages and subjects through the DictionaryResolver.
+ */
+@Service
+public class BookImportService {
+
+    @Autowired
+    private AuthorResolver authorResolver;
+
+    @Autowired
+    private DictionaryResolver dictionaryResolver;
+
+    @Autowired
+    private GutendexService gutendexService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Keep in sync with spring.jpa.properties.hibernate.jdbc.batch_size
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int batchSize;
+
+    /**
+     * Imports a list of Gutendex books with their authors.
+     * @param gutendexBooks The books to import
+     * @return Summary of what was written
+     */
+    @Transactional
+    public ImportResult importBooks(List<GutendexBook> gutendexBooks) {
+        // The same Gutendex book can show up more than once (e.g. overlapping searches)
+        Map<Integer, GutendexBook> uniqueBooks = new LinkedHashMap<>();
+        List<GutendexBook> booksWithoutId = new ArrayList<>();
+        for (GutendexBook gutendexBook : gutendexBooks) {
+            if (gutendexBook.getId() == null) {
+                booksWithoutId.add(gutendexBook);
+            } else {
+                uniqueBooks.putIfAbsent(gutendexBook.getId(), gutendexBook);
+            }
+        }
+        // Books already in the library are left alone; syncing is what updates them
+        if (!uniqueBooks.isEmpty()) {
+            bookRepository.findExistingGutendexIds(uniqueBooks.keySet()).forEach(uniqueBooks::remove);
+        }
+        List<GutendexBook> toImport = new ArrayList<>(uniqueBooks.values());
+        toImport.addAll(booksWithoutId);
+
+        prepareLinks(toImport);
+        List<Book> books = new ArrayList<>(toImport.size());
+        for (GutendexBook gutendexBook : toImport) {
+            Book book = gutendexService.convertToBook(gutendexBook);
+            link(book, gutendexBook);
+            books.add(book);
+        }
+        persistInBatches(books);
+
+        return new ImportResult(books.size(), gutendexBooks.size() - toImport.size());
+    }
+
+    /**
+     * Adds the authors, languages and subjects of many Gutendex books that the
+     * library doesn't have yet, with one statement each, so linking the books
+     * afterwards needs no more. Doing them all up front, always in this order,
+     * also means concurrent imports lock new rows in the same order.
+     * @param gutendexBooks The books about to be linked in the current transaction
+     */
+    public void prepareLinks(Collection<GutendexBook> gutendexBooks) {
+        List<Author> authors = new ArrayList<>();
+        List<String> languages = new ArrayList<>();
+        List<String> subjects = new ArrayList<>();
+        for (GutendexBook gutendexBook : gutendexBooks) {
+            authors.addAll(gutendexService.convertToAuthors(gutendexBook));
+            if (gutendexBook.getLanguages() != null) {
+                languages.addAll(gutendexBook.getLanguages());
+            }
+            if (gutendexBook.getSubjects() != null) {
+                subjects.addAll(gutendexBook.getSubjects());
+            }
+        }
+        authorResolver.resolveAll(authors);
+        dictionaryResolver.languageIds(languages);
+        dictionaryResolver.subjectIds(subjects);
+    }
+
+    /**
+     * Sets a book's authors, languages and subjects to those of a Gutendex book,
+     * adding the ones the library doesn't have yet.
+     * @param book A new book, or one loaded in the current transaction
+     * @param gutendexBook Where the values come from
+     */
+    public void link(Book book, GutendexBook gutendexBook) {
+        // Only the id is needed to link the book; the name saves listeners a lookup
+        List<Author> authors = gutendexService.convertToAuthors(gutendexBook);
+        authorResolver.resolveAll(authors);
+        book.setAuthor(authors.get(0));
+        book.getAuthors().clear();
+        book.getAuthors().addAll(authors);
+        // The first language is also kept on the book itself, for listings
+        List<Language> languages = dictionaryResolver.languages(gutendexBook.getLanguages());
+        book.setLanguage(languages.isEmpty() ? null : languages.get(0));
+        book.getLanguages().clear();
+        book.getLanguages().addAll(languages);
+        book.getSubjects().clear();
+        book.getSubjects().addAll(dictionaryResolver.subjects(gutendexBook.getSubjects()));
+    }
+
+    /**
+     * Persists entities and flushes every batch, clearing the persistence
+     * context so a large import doesn't keep every entity in memory.
+     */
+    private void persistInBatches(List<Book> entities) {
+        for (int i = 0; i < entities.size(); i++) {
+            entityManager.persist(entities.get(i));
+            if ((i + 1) % batchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    /**
+     * Summary of an import.
+     * @param booksSaved Number of books written
+     * @param duplicatesSkipped Number of input books skipped as duplicates or already in the library
+     */
+    public record ImportResult(int booksSaved, int duplicatesSkipped) {}
+}
@@ -0,0 +1,31 @@
+package com.alura.literalura;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Keeps the BookSearchIndex in sync with the books table.
+ * Hibernate calls it whenever a book is saved or deleted; the index is
+ * only changed once the transaction has committed.
+ */
+public class BookIndexListener {
+
+    // Looked up lazily: the index needs the repositories, which need this listener
+    @Autowired
+    private ObjectProvider<BookSearchIndex> searchIndex;
+
+    @PostPersist
+    @PostUpdate
+    public void bookSaved(Book book) {
+        AfterCommit.run(() -> searchIndex.getObject().add(book));
+    }
+
+    @PostRemove
+    public void bookRemoved(Book book) {
+        Long bookId = book.getId();
+        AfterCommit.run(() -> searchIndex.getObject().remove(bookId));
+    }
+}
@@ -0,0 +1,40 @@
+package com.alura.literalura;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+
+/**
+ * Keeps the LanguageIndex in sync with the books table.
+ * The language codes are read when Hibernate saves the book, and put in the
+ * index once the transaction has committed.
+ */
+public class BookLanguageListener {
+
+    // Looked up lazily: the index needs the repositories, which need this listener
+    @Autowired
+    private ObjectProvider<LanguageIndex> languageIndex;
+
+    @PostPersist
+    @PostUpdate
+    public void bookSaved(Book book) {
+        // Languages that were never loaded were not changed either
+        if (!Hibernate.isInitialized(book.getLanguages())) {
+            return;
+        }
+        Long bookId = book.getId();
+        List<String> codes = book.getLanguages().stream().map(Language::getCode).toList();
+        AfterCommit.run(() -> languageIndex.getObject().put(bookId, codes));
+    }
+
+    @PostRemove
+    public void bookRemoved(Book book) {
+        Long bookId = book.getId();
+        AfterCommit.run(() -> languageIndex.getObject().remove(bookId));
+    }
+}
@@ -1,9 +1,21 @@
 package com.alura.literalura;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Handles database operations for books.
@@ -12,13 +24,118 @@ import java.util.List;
 @Repository
 public interface BookRepository extends JpaRepository<Book, Long> {
 
-    // Find books by title (case insensitive)
+    // Queries that return books load the author and language in the same select (entity graph or join fetch);
+    // otherwise printing a book would run one extra select per author.
+    // Finder results are kept in the query cache until the books or authors table changes.
+
+    @Override
+    @EntityGraph(attributePaths = {"author", "language"})
+    List<Book> findAll();
+
+    @Override
+    @EntityGraph(attributePaths = {"author", "language"})
+    Page<Book> findAll(Pageable pageable);
+
+    // Find books by title (case insensitive); lower() so the trigram index on lower(title) is used
+    @EntityGraph(attributePaths = {"author", "language"})
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT b FROM Book b WHERE lower(b.title) LIKE lower(concat('%', :title, '%'))")
     List<Book> findByTitleContainingIgnoreCase(String title);
 
-    // Find books by language
-    List<Book> findByLanguageIgnoreCase(String language);
+    // Find books in a language (any of theirs, not only the first); "English" and "EN" are read as "en"
+    default List<Book> findByLanguageIgnoreCase(String language) {
+        return findByLanguageCode(DictionaryResolver.normalizeLanguage(language));
+    }
+
+    // Books with an ISO language code, through the unique index on languages.code
+    // and the index on book_languages.language_id
+    @EntityGraph(attributePaths = {"author", "language"})
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT b FROM Book b JOIN b.languages l WHERE l.code = :code ORDER BY b.id")
+    List<Book> findByLanguageCode(String code);
+
+    // Same as findByLanguageIgnoreCase, but only the columns needed for display
+    default List<BookSummary> findSummariesByLanguage(String language) {
+        return findSummariesByLanguageCode(DictionaryResolver.normalizeLanguage(language));
+    }
 
-    // Find books by author name
-    @Query("SELECT b FROM Book b WHERE b.author.name LIKE %:authorName%")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT new com.alura.literalura.BookSummary(b.title, bl.code, b.publicationYear, a.name) " +
+           "FROM Book b JOIN b.languages l LEFT JOIN b.language bl LEFT JOIN b.author a " +
+           "WHERE l.code = :code ORDER BY b.id")
+    List<BookSummary> findSummariesByLanguageCode(String code);
+
+    // Books with a subject heading containing the text (trigram index on lower(subjects.name),
+    // then the index on book_subjects.subject_id; see db/search-indexes.sql)
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT new com.alura.literalura.BookSummary(b.title, bl.code, b.publicationYear, a.name) " +
+           "FROM Book b LEFT JOIN b.language bl LEFT JOIN b.author a WHERE b.id IN (" +
+           "SELECT sb.id FROM Book sb JOIN sb.subjects s WHERE lower(s.name) LIKE lower(concat('%', :subject, '%'))) " +
+           "ORDER BY b.id")
+    List<BookSummary> findSummariesBySubject(String subject, Limit limit);
+
+    // Find books by author name (case insensitive, served by the trigram index on lower(name))
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "true"))
+    @Query("SELECT b FROM Book b JOIN FETCH b.author a LEFT JOIN FETCH b.language " +
+           "WHERE lower(a.name) LIKE lower(concat('%', :authorName, '%'))")
     List<Book> findByAuthorName(String authorName);
+
+    // Ranked full-text search on titles (uses the title_tsv column, see db/search-indexes.sql)
+    @Query(value = "SELECT * FROM books " +
+                   "WHERE title_tsv @@ websearch_to_tsquery('simple', :query) " +
+                   "ORDER BY ts_rank(title_tsv, websearch_to_tsquery('simple', :query)) DESC, id " +
+                   "LIMIT :limit", nativeQuery = true)
+    List<Book> searchByTitleFullText(String query, int limit);
+
+    // Typo-tolerant title search, most similar first (trigram similarity)
+    @Query(value = "SELECT * FROM books " +
+                   "WHERE lower(title) % lower(:term) " +
+                   "ORDER BY similarity(lower(title), lower(:term)) DESC, id " +
+                   "LIMIT :limit", nativeQuery = true)
+    List<Book> searchByTitleSimilarity(String term, int limit);
+
+    // Books with the given Gutendex ids
+    @EntityGraph(attributePaths = {"author", "language"})
+    List<Book> findByGutendexIdIn(Collection<Integer> gutendexIds);
+
+    // Which of the given Gutendex ids are already in the library
+    @Query("SELECT b.gutendexId FROM Book b WHERE b.gutendexId IN :gutendexIds")
+    Set<Integer> findExistingGutendexIds(Collection<Integer> gutendexIds);
+
+    // Highest Gutendex id in the library (null if no book came from Gutendex)
+    @Query("SELECT max(b.gutendexId) FROM Book b")
+    Integer findMaxGutendexId();
+
+    // Next Gutendex ids after the given one, in order (used to walk the library when syncing)
+    @Query("SELECT b.gutendexId FROM Book b WHERE b.gutendexId > :after ORDER BY b.gutendexId")
+    List<Integer> findGutendexIdsAfter(Integer after, Limit limit);
+
+    // The columns LibraryStatistics counts: a row per book and author (one row for a book without authors)
+    @Query("SELECT new com.alura.literalura.LibraryStatistics$FactRow(b.id, bl.code, a.id, a.name, b.downloadCount) " +
+           "FROM Book b LEFT JOIN b.language bl LEFT JOIN b.authors a ORDER BY b.id")
+    List<LibraryStatistics.FactRow> findAllFacts();
+
+    // Every (book, language code) link, for LanguageIndex
+    @Query("SELECT new com.alura.literalura.LanguageIndex$BookLanguage(b.id, l.code) FROM Book b JOIN b.languages l")
+    List<LanguageIndex.BookLanguage> findAllLanguageLinks();
+
+    // Move books from duplicate authors to the one that is kept
+    @Modifying
+    @Query("UPDATE Book b SET b.author = :author WHERE b.author IN :duplicates")
+    int reassignAuthor(Author author, List<Author> duplicates);
+
+    // Next page of books after the given id (keyset pagination; pass 0 for the first page), bypassing the cache
+    @EntityGraph(attributePaths = {"author", "language"})
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE"))
+    List<Book> findByIdGreaterThanOrderByIdAsc(Long lastId, Limit limit);
+
+    // All books as a stream, read in chunks of 500 rows. Needs an open (read-only) transaction.
+    // Full scans bypass the second-level cache so they don't push out the hot entries.
+    @QueryHints({
+        @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+        @QueryHint(name = HibernateHints.HINT_CACHE_MODE, value = "IGNORE")
+    })
+    @Query("SELECT b FROM Book b LEFT JOIN FETCH b.author LEFT JOIN FETCH b.language ORDER BY b.id")
+    Stream<Book> streamAll();
 }
@@ -0,0 +1,311 @@
+package com.alura.literalura;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory full-text index over book titles and the names of all their authors.
+ * Words are lowercased and stripped of accents ("Misérables" matches
+ * "miserables"), and a query word also matches longer words it is the start
+ * of ("prej" matches "prejudice"). Every query word must match the title or
+ * the author. Results are ranked, title matches before author matches and
+ * whole words before prefixes.
+ *
+ * The index is built when the application starts and kept up to date by
+ * BookIndexListener whenever a book is saved or deleted. A rebuild loads the
+ * books into a new index while searches keep using the old one, and swaps
+ * it in at the end; changes made during the load are applied to both.
+ */
+@Component
+public class BookSearchIndex {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    // Shorter query words only match whole words, to keep prefix scans small
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int LOAD_PAGE_SIZE = 1000;
+
+    private static final int TITLE_WORD = 4;
+    private static final int TITLE_PREFIX = 2;
+    private static final int AUTHOR_WORD = 3;
+    private static final int AUTHOR_PREFIX = 1;
+
+    @Autowired
+    private LibraryReader libraryReader;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock; replaced as a whole by rebuild()
+    private Contents contents = new Contents();
+    // Guarded by lock; while a rebuild is loading, the changes it may have missed
+    private List<Consumer<Contents>> changesDuringRebuild;
+
+    /**
+     * Loads every book into a new index (when the application starts, and
+     * after bulk loads) and swaps it in. Searches are only blocked for the swap.
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    public synchronized void rebuild() {
+        lock.writeLock().lock();
+        try {
+            changesDuringRebuild = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Contents fresh = new Contents();
+        boolean loaded = false;
+        try {
+            libraryReader.forEachBookPage(LOAD_PAGE_SIZE,
+                    page -> page.forEach(book -> fresh.add(book.getId(), Document.of(book))));
+            loaded = true;
+        } finally {
+            lock.writeLock().lock();
+            try {
+                // A failed load keeps the old index
+                if (loaded) {
+                    changesDuringRebuild.forEach(change -> change.accept(fresh));
+                    contents = fresh;
+                }
+                changesDuringRebuild = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Adds a book, or replaces its entry if it is already indexed.
+     * @param book The saved book
+     */
+    public void add(Book book) {
+        Long bookId = book.getId();
+        Document document = Document.of(book);
+        change(index -> index.add(bookId, document));
+    }
+
+    /**
+     * Removes a book from the index.
+     * @param bookId The id of the deleted book
+     */
+    public void remove(Long bookId) {
+        change(index -> index.remove(bookId));
+    }
+
+    private void change(Consumer<Contents> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(contents);
+            if (changesDuringRebuild != null) {
+                changesDuringRebuild.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Searches titles and author names.
+     * @param query Words to look for
+     * @param limit Maximum number of hits
+     * @return Matching books, best first
+     */
+    public List<Hit> search(String query, int limit) {
+        List<String> words = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (words.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            // Score every word separately, then keep the books that match all of them
+            List<Map<Long, Integer>> perWord = new ArrayList<>(words.size());
+            for (String word : words) {
+                Map<Long, Integer> scores = new HashMap<>();
+                score(contents.titleTerms, word, TITLE_WORD, TITLE_PREFIX, scores);
+                score(contents.authorTerms, word, AUTHOR_WORD, AUTHOR_PREFIX, scores);
+                if (scores.isEmpty()) {
+                    return List.of();
+                }
+                perWord.add(scores);
+            }
+            perWord.sort(Comparator.comparingInt(Map::size));
+
+            List<Hit> hits = new ArrayList<>();
+            candidates:
+            for (Map.Entry<Long, Integer> candidate : perWord.get(0).entrySet()) {
+                int total = candidate.getValue();
+                for (int i = 1; i < perWord.size(); i++) {
+                    Integer score = perWord.get(i).get(candidate.getKey());
+                    if (score == null) {
+                        continue candidates;
+                    }
+                    total += score;
+                }
+                Document document = contents.documents.get(candidate.getKey());
+                hits.add(new Hit(candidate.getKey(), document.title(), document.language(), document.authorName(), total));
+            }
+
+            // Higher score first; among equals, shorter titles are closer matches
+            hits.sort(Comparator.comparingInt(Hit::score).reversed()
+                    .thenComparingInt(hit -> hit.title().length())
+                    .thenComparing(Hit::bookId));
+            return hits.size() > limit ? List.copyOf(hits.subList(0, limit)) : hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Looks books up by id, e.g. the result of a LanguageIndex filter.
+     * @param bookIds Ids of books, in the order wanted
+     * @return The books' display columns, in the same order; unknown ids are skipped
+     */
+    public List<BookSummary> summaries(List<Long> bookIds) {
+        lock.readLock().lock();
+        try {
+            List<BookSummary> summaries = new ArrayList<>(bookIds.size());
+            for (Long bookId : bookIds) {
+                Document document = contents.documents.get(bookId);
+                if (document != null) {
+                    summaries.add(new BookSummary(document.title(), document.language(), document.publicationYear(),
+                            document.authorName()));
+                }
+            }
+            return summaries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of indexed books
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return contents.documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits text into lowercase, accent-free words.
+     * @param text The text to split
+     * @return The words, in order
+     */
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        String folded = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        List<String> words = new ArrayList<>();
+        for (String word : NON_WORD.split(folded)) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    private void score(NavigableMap<String, Set<Long>> terms, String word, int wordScore, int prefixScore,
+                       Map<Long, Integer> scores) {
+        Set<Long> exact = terms.get(word);
+        if (exact != null) {
+            exact.forEach(id -> scores.merge(id, wordScore, Math::max));
+        }
+        if (word.length() >= MIN_PREFIX_LENGTH) {
+            // All terms starting with the word; the exact term is skipped as it is already scored
+            for (Set<Long> ids : terms.subMap(word, false, word + Character.MAX_VALUE, false).values()) {
+                ids.forEach(id -> scores.merge(id, prefixScore, Math::max));
+            }
+        }
+    }
+
+    /**
+     * The documents and the word postings pointing at them.
+     */
+    private static final class Contents {
+
+        private final Map<Long, Document> documents = new HashMap<>();
+        private final NavigableMap<String, Set<Long>> titleTerms = new TreeMap<>();
+        private final NavigableMap<String, Set<Long>> authorTerms = new TreeMap<>();
+
+        void add(Long bookId, Document document) {
+            remove(bookId);
+            documents.put(bookId, document);
+            document.titleWords().forEach(word -> titleTerms.computeIfAbsent(word, key -> new HashSet<>()).add(bookId));
+            document.authorWords().forEach(word -> authorTerms.computeIfAbsent(word, key -> new HashSet<>()).add(bookId));
+        }
+
+        void remove(Long bookId) {
+            Document document = documents.remove(bookId);
+            if (document != null) {
+                removePostings(titleTerms, document.titleWords(), bookId);
+                removePostings(authorTerms, document.authorWords(), bookId);
+            }
+        }
+
+        private static void removePostings(Map<String, Set<Long>> terms, Set<String> words, Long bookId) {
+            for (String word : words) {
+                Set<Long> ids = terms.get(word);
+                if (ids != null) {
+                    ids.remove(bookId);
+                    if (ids.isEmpty()) {
+                        terms.remove(word);
+                    }
+                }
+            }
+        }
+    }
+
+    private record Document(String title, String language, Integer publicationYear, String authorName,
+                            Set<String> titleWords, Set<String> authorWords) {
+
+        // Tokenized before taking the lock, and without keeping the entity
+        static Document of(Book book) {
+            // Every author is searchable, not only the first
+            String authorName = book.getAuthorNames();
+            return new Document(book.getTitle(), book.getLanguageCode(), book.getPublicationYear(), authorName,
+                    new HashSet<>(tokenize(book.getTitle())), new HashSet<>(tokenize(authorName)));
+        }
+    }
+
+    /**
+     * A search result.
+     * @param bookId Id of the matching book
+     * @param title Book title
+     * @param language Book language (may be null)
+     * @param authorName Names of the authors (may be null)
+     * @param score Relevance; higher is better
+     */
+    public record Hit(Long bookId, String title, String language, String authorName, int score) {
+
+        @Override
+        public String toString() {
+            return "Book: " + title +
+                   (language != null ? " [" + language + "]" : "") +
+                   (authorName != null ? " by " + authorName : "");
+        }
+    }
+}
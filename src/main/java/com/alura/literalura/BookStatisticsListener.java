@@ -0,0 +1,32 @@
+package com.alura.literalura;
+
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Keeps LibraryStatistics in sync with the books table.
+ * The counted values are read when Hibernate saves the book, and added
+ * to the totals once the transaction has committed.
+ */
+public class BookStatisticsListener {
+
+    // Looked up lazily: the statistics need the repositories, which need this listener
+    @Autowired
+    private ObjectProvider<LibraryStatistics> statistics;
+
+    @PostPersist
+    @PostUpdate
+    public void bookSaved(Book book) {
+        LibraryStatistics.BookFacts facts = LibraryStatistics.BookFacts.of(book);
+        AfterCommit.run(() -> statistics.getObject().put(facts));
+    }
+
+    @PostRemove
+    public void bookRemoved(Book book) {
+        Long bookId = book.getId();
+        AfterCommit.run(() -> statistics.getObject().remove(bookId));
+    }
+}
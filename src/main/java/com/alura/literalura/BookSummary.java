@@ -0,0 +1,15 @@
+package com.alura.literalura;
+
+/**
+ * Read-only view of a book with its author's name.
+ * Loaded straight from a query, so listing books doesn't load entities.
+ */
+public record BookSummary(String title, String language, Integer publicationYear, String authorName) {
+
+    @Override
+    public String toString() {
+        return "Book: " + title +
+               (language != null ? " [" + language + "]" : "") +
+               (authorName != null ? " by " + authorName : "");
+    }
+}
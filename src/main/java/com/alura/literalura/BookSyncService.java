@@ -0,0 +1,279 @@
+package com.alura.literalura;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Refreshes books imported from Gutendex without downloading the whole catalog again.
+ *
+ * A sync run does two things:
+ * - New books: imports the books with a higher Gutendex id than any in the
+ *   library, walking the catalog in id order from the first page that has
+ *   one. A run that stops at the limit leaves no gap, as the next one
+ *   continues after the last book it imported.
+ * - Changes: looks up a slice of the library by id (32 ids per request) and
+ *   compares each book's fingerprint with the stored one. Only books whose
+ *   title, authors, languages or subjects changed are written, as batched
+ *   updates (their download count is refreshed at the same time).
+ *   The next run continues with the next slice (saved in a checkpoint file)
+ *   and wraps around at the end, so the whole library is covered over a few runs.
+ */
+@Service
+public class BookSyncService {
+
+    private static final Logger log = LoggerFactory.getLogger(BookSyncService.class);
+
+    // Ids per transaction (eight Gutendex requests)
+    private static final int CHUNK_SIZE = 256;
+    private static final int IDS_PER_REQUEST = 32;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private GutendexService gutendexService;
+
+    @Autowired
+    private BookImportService bookImportService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Books checked for changes per run, and most new books imported per run
+    @Value("${literalura.sync.max-books-per-run:5000}")
+    private int maxBooksPerRun;
+
+    @Value("${literalura.sync.checkpoint-file:gutendex-sync.checkpoint}")
+    private Path checkpointFile;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Runs a sync on the literalura.sync.cron schedule ("-" turns it off).
+     */
+    @Scheduled(cron = "${literalura.sync.cron:-}")
+    public void scheduledSync() {
+        try {
+            SyncResult result = sync();
+            log.info("Scheduled sync: {}", result);
+        } catch (GutendexException | UncheckedIOException e) {
+            log.warn("Scheduled sync failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Imports new books and updates changed ones.
+     * @return Summary of the run (all zero if another sync is running)
+     * @throws GutendexException if Gutendex fails; changes saved so far are kept
+     * @throws UncheckedIOException if the checkpoint file cannot be read or written
+     */
+    public SyncResult sync() {
+        if (!running.compareAndSet(false, true)) {
+            log.info("A sync is already running");
+            return new SyncResult(0, 0, 0, 0, 0);
+        }
+        try {
+            SyncResult added = importNewBooks();
+            SyncResult refreshed = refreshChangedBooks();
+            return new SyncResult(added.newBooks(), refreshed.checked(), refreshed.updated(), refreshed.missing(),
+                    added.requests() + refreshed.requests());
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private SyncResult importNewBooks() {
+        Integer newestKnown = bookRepository.findMaxGutendexId();
+        if (newestKnown == null) {
+            // Nothing imported yet; that's a job for an import or harvest
+            return new SyncResult(0, 0, 0, 0, 0);
+        }
+
+        GutendexResponse first = catalogPage(1);
+        int requests = 1;
+        if (first == null || first.getCount() == null || results(first).isEmpty()) {
+            return new SyncResult(0, 0, 0, 0, requests);
+        }
+
+        // Gutendex can't filter by "id above", so the first page with a newer book is found by bisection
+        int lo = 1;
+        int hi = Math.ceilDiv(first.getCount(), results(first).size()) + 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            GutendexResponse response = mid == 1 ? first : catalogPage(mid);
+            requests += mid == 1 ? 0 : 1;
+            if (response == null || lastId(response) > newestKnown) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+
+        int imported = 0;
+        for (int page = lo; imported < maxBooksPerRun; page++) {
+            GutendexResponse response = catalogPage(page);
+            requests++;
+            if (response == null) {
+                break;
+            }
+            // In id order, so the books left out by the limit are all newer than those imported
+            List<GutendexBook> newer = results(response).stream()
+                    .filter(book -> book.getId() != null && book.getId() > newestKnown)
+                    .limit(maxBooksPerRun - imported)
+                    .toList();
+            imported += bookImportService.importBooks(newer).booksSaved();
+            if (response.getNext() == null) {
+                break;
+            }
+        }
+        return new SyncResult(imported, 0, 0, 0, requests);
+    }
+
+    // A page of the catalog in id order, or null past its end (Gutendex answers 404)
+    private GutendexResponse catalogPage(int page) {
+        try {
+            return gutendexService.fetchPage(gutendexService.catalogPageUrl(page));
+        } catch (GutendexException e) {
+            if (e.getKind() == GutendexException.Kind.CLIENT_ERROR) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private static List<GutendexBook> results(GutendexResponse response) {
+        return response.getResults() != null ? response.getResults() : List.of();
+    }
+
+    // Highest id on a page; an empty page counts as past the newest book
+    private static int lastId(GutendexResponse response) {
+        return results(response).stream()
+                .map(GutendexBook::getId)
+                .filter(Objects::nonNull)
+                .max(Integer::compare)
+                .orElse(Integer.MAX_VALUE);
+    }
+
+    private SyncResult refreshChangedBooks() {
+        int checked = 0;
+        int updated = 0;
+        int missing = 0;
+        int requests = 0;
+        int cursor = readCheckpoint();
+
+        while (checked < maxBooksPerRun) {
+            int limit = Math.min(CHUNK_SIZE, maxBooksPerRun - checked);
+            List<Integer> ids = bookRepository.findGutendexIdsAfter(cursor, Limit.of(limit));
+            if (ids.isEmpty()) {
+                if (cursor == 0) {
+                    break;
+                }
+                // End of the library: start over from the beginning next time
+                cursor = 0;
+                writeCheckpoint(cursor);
+                break;
+            }
+
+            Map<Integer, GutendexBook> remote = gutendexService.getBooksByIds(ids);
+            requests += (ids.size() + IDS_PER_REQUEST - 1) / IDS_PER_REQUEST;
+            ChunkResult chunk = transactionTemplate.execute(status -> applyChanges(ids, remote));
+
+            checked += ids.size();
+            updated += chunk.updated();
+            missing += chunk.missing();
+            cursor = ids.get(ids.size() - 1);
+            writeCheckpoint(cursor);
+        }
+        return new SyncResult(0, checked, updated, missing, requests);
+    }
+
+    /**
+     * Updates the books whose Gutendex data changed. Unchanged books are not
+     * touched, so they cost no write; changed ones are flushed as a JDBC batch.
+     */
+    private ChunkResult applyChanges(List<Integer> ids, Map<Integer, GutendexBook> remote) {
+        int missing = 0;
+        Map<Book, GutendexBook> changed = new LinkedHashMap<>();
+        for (Book book : bookRepository.findByGutendexIdIn(ids)) {
+            GutendexBook gutendexBook = remote.get(book.getGutendexId());
+            if (gutendexBook == null) {
+                // Removed from Gutendex; the local copy is kept
+                missing++;
+            } else if (!Objects.equals(book.getContentFingerprint(), gutendexService.fingerprint(gutendexBook))) {
+                changed.put(book, gutendexBook);
+            }
+        }
+
+        bookImportService.prepareLinks(changed.values());
+        changed.forEach((book, gutendexBook) -> {
+            Book fresh = gutendexService.convertToBook(gutendexBook);
+            book.setTitle(fresh.getTitle());
+            book.setDownloadCount(fresh.getDownloadCount());
+            book.setContentFingerprint(fresh.getContentFingerprint());
+            bookImportService.link(book, gutendexBook);
+        });
+        return new ChunkResult(changed.size(), missing);
+    }
+
+    private int readCheckpoint() {
+        try {
+            if (Files.exists(checkpointFile)) {
+                String cursor = Files.readString(checkpointFile).trim();
+                return cursor.isEmpty() ? 0 : Integer.parseInt(cursor);
+            }
+            return 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading sync checkpoint " + checkpointFile, e);
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring invalid sync checkpoint: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    private void writeCheckpoint(int cursor) {
+        try {
+            // Write to a temp file first so a crash never leaves a half-written checkpoint
+            Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+            Files.writeString(temp, String.valueOf(cursor));
+            Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing sync checkpoint " + checkpointFile, e);
+        }
+    }
+
+    private record ChunkResult(int updated, int missing) {}
+
+    /**
+     * Summary of a sync run.
+     * @param newBooks Books imported because they are new in Gutendex
+     * @param checked Library books compared with Gutendex
+     * @param updated Books that had changed and were updated
+     * @param missing Books Gutendex no longer returns (kept as they are)
+     * @param requests Gutendex requests made
+     */
+    public record SyncResult(int newBooks, int checked, int updated, int missing, int requests) {
+
+        @Override
+        public String toString() {
+            return newBooks + " new, " + updated + " updated, " + missing + " missing, " +
+                   checked + " checked with " + requests + " requests";
+        }
+    }
+}
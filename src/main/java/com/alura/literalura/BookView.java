@@ -0,0 +1,22 @@
+package com.alura.literalura;
+
+import java.util.List;
+
+/**
+ * JSON view of a book for the REST API.
+ * "language" and "authorId"/"authorName" are the first of "languages" and "authors".
+ */
+public record BookView(Long id, String title, String language, Integer publicationYear,
+                       Integer downloadCount, Long authorId, String authorName,
+                       List<AuthorView> authors, List<String> languages, List<String> subjects) {
+
+    public static BookView of(Book book) {
+        Author author = book.getAuthor();
+        return new BookView(book.getId(), book.getTitle(), book.getLanguageCode(), book.getPublicationYear(),
+                book.getDownloadCount(), author != null ? author.getId() : null,
+                author != null ? author.getName() : null,
+                book.getAuthors().stream().map(AuthorView::of).toList(),
+                book.getLanguages().stream().map(Language::getCode).toList(),
+                book.getSubjects().stream().map(Subject::getName).toList());
+    }
+}
@@ -0,0 +1,397 @@
+package com.alura.literalura;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Loads a local catalog dump into the library, without calling Gutendex.
+ * The dump is a JSON-lines file: one Gutendex book object (as returned by
+ * the API) per line.
+ *
+ * The file is memory-mapped in chunks that end on a line break. Chunks are
+ * parsed in parallel, one per CPU, and turned into CSV rows that are streamed
+ * into temporary tables with PostgreSQL COPY, in file order: books, their
+ * authors (with birth and death years), languages and subjects. Authors,
+ * languages, subjects and books are then inserted from those tables with a
+ * few set-based statements, and only the new books are linked.
+ * Books already in the library (same Gutendex id) are skipped, so the same
+ * dump can be loaded again.
+ *
+ * The inserts are native SQL, so the in-memory indexes are rebuilt and the
+ * second-level cache is cleared once the load has committed.
+ */
+@Service
+public class CatalogDumpLoader {
+
+    private static final byte NEWLINE = '\n';
+    // Bytes read at a time while looking for the end of a chunk's last line
+    private static final int SCAN_BUFFER_SIZE = 8192;
+
+    // Dropped with the transaction. One row per book, per author of a book, and so on.
+    private static final String CREATE_STAGING_TABLES =
+            "CREATE TEMPORARY TABLE dump_books (gutendex_id integer, title text, language text, " +
+            "download_count integer, content_fingerprint bigint, normalized_name text) ON COMMIT DROP; " +
+            "CREATE TEMPORARY TABLE dump_authors (gutendex_id integer, position integer, name text, " +
+            "normalized_name text, birth_year integer, death_year integer) ON COMMIT DROP; " +
+            "CREATE TEMPORARY TABLE dump_languages (gutendex_id integer, code text) ON COMMIT DROP; " +
+            "CREATE TEMPORARY TABLE dump_subjects (gutendex_id integer, name text) ON COMMIT DROP";
+
+    private static final String COPY_BOOKS = "COPY dump_books FROM STDIN (FORMAT csv)";
+    private static final String COPY_AUTHORS = "COPY dump_authors FROM STDIN (FORMAT csv)";
+    private static final String COPY_LANGUAGES = "COPY dump_languages FROM STDIN (FORMAT csv)";
+    private static final String COPY_SUBJECTS = "COPY dump_subjects FROM STDIN (FORMAT csv)";
+
+    // One row per new author; nextval only runs for rows that are really inserted
+    private static final String INSERT_AUTHORS =
+            "INSERT INTO authors (id, name, normalized_name, birth_year, death_year) " +
+            "SELECT nextval('authors_seq'), d.name, d.normalized_name, d.birth_year, d.death_year FROM (" +
+            "  SELECT DISTINCT ON (normalized_name) name, normalized_name, birth_year, death_year " +
+            "  FROM dump_authors ORDER BY normalized_name, gutendex_id, position) d " +
+            "WHERE NOT EXISTS (SELECT 1 FROM authors a WHERE a.normalized_name = d.normalized_name) " +
+            "ON CONFLICT (normalized_name) DO NOTHING";
+
+    // Years an author doesn't have yet are taken from any book of the dump that has them
+    private static final String FILL_AUTHOR_YEARS =
+            "UPDATE authors a SET birth_year = coalesce(a.birth_year, d.birth_year), " +
+            "death_year = coalesce(a.death_year, d.death_year) " +
+            "FROM (SELECT normalized_name, max(birth_year) AS birth_year, max(death_year) AS death_year " +
+            "  FROM dump_authors GROUP BY normalized_name) d " +
+            "WHERE a.normalized_name = d.normalized_name " +
+            "AND (a.birth_year IS NULL AND d.birth_year IS NOT NULL OR a.death_year IS NULL AND d.death_year IS NOT NULL)";
+
+    private static final String INSERT_LANGUAGES =
+            "INSERT INTO languages (id, code) " +
+            "SELECT nextval('languages_seq'), d.code FROM (SELECT DISTINCT code FROM dump_languages) d " +
+            "WHERE NOT EXISTS (SELECT 1 FROM languages l WHERE l.code = d.code) " +
+            "ON CONFLICT (code) DO NOTHING";
+
+    private static final String INSERT_SUBJECTS =
+            "INSERT INTO subjects (id, name) " +
+            "SELECT nextval('subjects_seq'), d.name FROM (SELECT DISTINCT name FROM dump_subjects) d " +
+            "WHERE NOT EXISTS (SELECT 1 FROM subjects s WHERE s.name = d.name) " +
+            "ON CONFLICT (name) DO NOTHING";
+
+    // Inserts the new books and links only those, in one statement; returns how many were inserted
+    private static final String INSERT_BOOKS =
+            "WITH new_books AS (" +
+            "  INSERT INTO books (id, title, language_id, download_count, author_id, gutendex_id, content_fingerprint) " +
+            "  SELECT nextval('books_seq'), d.title, l.id, d.download_count, a.id, d.gutendex_id, " +
+            "  d.content_fingerprint " +
+            "  FROM (SELECT DISTINCT ON (gutendex_id) * FROM dump_books ORDER BY gutendex_id) d " +
+            "  JOIN authors a ON a.normalized_name = d.normalized_name " +
+            "  LEFT JOIN languages l ON l.code = d.language " +
+            "  WHERE NOT EXISTS (SELECT 1 FROM books b WHERE b.gutendex_id = d.gutendex_id) " +
+            "  ON CONFLICT (gutendex_id) DO NOTHING " +
+            "  RETURNING id, gutendex_id), " +
+            "linked_authors AS (" +
+            "  INSERT INTO book_authors (book_id, author_id, position) " +
+            "  SELECT nb.id, a.id, d.position FROM new_books nb " +
+            "  JOIN dump_authors d ON d.gutendex_id = nb.gutendex_id " +
+            "  JOIN authors a ON a.normalized_name = d.normalized_name " +
+            "  ON CONFLICT DO NOTHING), " +
+            "linked_languages AS (" +
+            "  INSERT INTO book_languages (book_id, language_id) " +
+            "  SELECT nb.id, l.id FROM new_books nb " +
+            "  JOIN dump_languages d ON d.gutendex_id = nb.gutendex_id " +
+            "  JOIN languages l ON l.code = d.code " +
+            "  ON CONFLICT DO NOTHING), " +
+            "linked_subjects AS (" +
+            "  INSERT INTO book_subjects (book_id, subject_id) " +
+            "  SELECT nb.id, s.id FROM new_books nb " +
+            "  JOIN dump_subjects d ON d.gutendex_id = nb.gutendex_id " +
+            "  JOIN subjects s ON s.name = d.name " +
+            "  ON CONFLICT DO NOTHING) " +
+            "SELECT count(*) FROM new_books";
+
+    @Autowired
+    private GutendexService gutendexService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private LibraryViews libraryViews;
+
+    @Value("${literalura.dump.chunk-size:8MB}")
+    private DataSize chunkSize;
+
+    private final ObjectReader bookReader = new ObjectMapper().readerFor(GutendexBook.class);
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Loads every book of a dump file.
+     * @param file JSON-lines file of Gutendex books
+     * @return What was read and written
+     * @throws UncheckedIOException if the file can't be read
+     * @throws IllegalStateException if a load is already running
+     */
+    public LoadResult load(Path file) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A catalog load is already running");
+        }
+        long started = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            LoadResult result = transactionTemplate.execute(status ->
+                    jdbcTemplate.execute((ConnectionCallback<LoadResult>) connection -> {
+                        jdbcTemplate.execute(CREATE_STAGING_TABLES);
+                        CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+                        Staged staged = stage(channel, copyManager);
+                        int authors = jdbcTemplate.update(INSERT_AUTHORS);
+                        jdbcTemplate.update(FILL_AUTHOR_YEARS);
+                        jdbcTemplate.update(INSERT_LANGUAGES);
+                        jdbcTemplate.update(INSERT_SUBJECTS);
+                        Integer books = jdbcTemplate.queryForObject(INSERT_BOOKS, Integer.class);
+                        return new LoadResult(staged.records(), staged.invalid(), books != null ? books : 0, authors,
+                                Duration.ofNanos(System.nanoTime() - started));
+                    }));
+            libraryViews.refresh();
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading " + file, e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Parses the file chunk by chunk and copies the rows into the staging table.
+     * A few chunks are parsed ahead while the previous one is being copied.
+     * @return Records read from the whole file
+     */
+    private Staged stage(FileChannel channel, CopyManager copyManager) throws SQLException {
+        int parsers = Runtime.getRuntime().availableProcessors();
+        Deque<CompletableFuture<ParsedChunk>> inFlight = new ArrayDeque<>();
+        int records = 0;
+        int invalid = 0;
+
+        // Parsing is CPU-bound, so platform threads, one per core
+        try (ExecutorService executor = Executors.newFixedThreadPool(parsers)) {
+            long size = channel.size();
+            long position = 0;
+            while (position < size || !inFlight.isEmpty()) {
+                while (position < size && inFlight.size() < parsers * 2) {
+                    long end = chunkEnd(channel, position, size);
+                    MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, end - position);
+                    inFlight.add(CompletableFuture.supplyAsync(() -> parse(chunk), executor));
+                    position = end;
+                }
+
+                ParsedChunk parsed = inFlight.removeFirst().join();
+                copyManager.copyIn(COPY_BOOKS, new StringReader(parsed.books.toString()));
+                copyManager.copyIn(COPY_AUTHORS, new StringReader(parsed.authors.toString()));
+                copyManager.copyIn(COPY_LANGUAGES, new StringReader(parsed.languages.toString()));
+                copyManager.copyIn(COPY_SUBJECTS, new StringReader(parsed.subjects.toString()));
+                records += parsed.records;
+                invalid += parsed.invalid;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : e;
+        }
+        return new Staged(records, invalid);
+    }
+
+    /**
+     * Finds where a chunk starting at "start" ends: just after the first line
+     * break at or past start + chunk size, or at the end of the file.
+     */
+    private long chunkEnd(FileChannel channel, long start, long size) throws IOException {
+        long position = Math.min(start + chunkSize.toBytes(), size);
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == NEWLINE) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * Parses the lines of one chunk into CSV rows for the staging tables.
+     * Blank lines are ignored; lines that aren't a book with an id and a title are counted as invalid.
+     */
+    private ParsedChunk parse(ByteBuffer chunk) {
+        byte[] bytes = new byte[chunk.remaining()];
+        chunk.get(bytes);
+
+        ParsedChunk parsed = new ParsedChunk(bytes.length);
+        int lineStart = 0;
+        for (int i = 0; i <= bytes.length; i++) {
+            if (i < bytes.length && bytes[i] != NEWLINE) {
+                continue;
+            }
+            if (!isBlank(bytes, lineStart, i)) {
+                parsed.records++;
+                if (!appendRows(bytes, lineStart, i - lineStart, parsed)) {
+                    parsed.invalid++;
+                }
+            }
+            lineStart = i + 1;
+        }
+        return parsed;
+    }
+
+    private boolean appendRows(byte[] bytes, int offset, int length, ParsedChunk parsed) {
+        GutendexBook gutendexBook;
+        try {
+            gutendexBook = bookReader.readValue(bytes, offset, length);
+        } catch (IOException e) {
+            return false;
+        }
+        if (gutendexBook == null || gutendexBook.getId() == null || gutendexBook.getTitle() == null) {
+            return false;
+        }
+
+        Book book = gutendexService.convertToBook(gutendexBook);
+        List<Author> authors = gutendexService.convertToAuthors(gutendexBook);
+        Integer gutendexId = book.getGutendexId();
+
+        StringBuilder rows = parsed.books;
+        appendCsv(rows, gutendexId).append(',');
+        appendCsv(rows, book.getTitle()).append(',');
+        appendCsv(rows, firstLanguage(gutendexBook)).append(',');
+        appendCsv(rows, book.getDownloadCount()).append(',');
+        appendCsv(rows, book.getContentFingerprint()).append(',');
+        appendCsv(rows, authors.get(0).getNormalizedName()).append('\n');
+
+        for (int position = 0; position < authors.size(); position++) {
+            Author author = authors.get(position);
+            rows = parsed.authors;
+            appendCsv(rows, gutendexId).append(',');
+            appendCsv(rows, position).append(',');
+            appendCsv(rows, author.getName().trim()).append(',');
+            appendCsv(rows, author.getNormalizedName()).append(',');
+            appendCsv(rows, author.getBirthYear()).append(',');
+            appendCsv(rows, author.getDeathYear()).append('\n');
+        }
+        appendValues(parsed.languages, gutendexId, gutendexBook.getLanguages(), DictionaryResolver::normalizeLanguage);
+        appendValues(parsed.subjects, gutendexId, gutendexBook.getSubjects(), DictionaryResolver::normalizeSubject);
+        return true;
+    }
+
+    // Code of the language kept on the book itself, as written to dump_languages
+    private static String firstLanguage(GutendexBook gutendexBook) {
+        List<String> languages = gutendexBook.getLanguages();
+        return languages != null && !languages.isEmpty() ? DictionaryResolver.normalizeLanguage(languages.get(0)) : null;
+    }
+
+    // One (gutendex id, value) row per value that isn't blank
+    private static void appendValues(StringBuilder rows, Integer gutendexId, List<String> values,
+                                     Function<String, String> normalizer) {
+        if (values == null) {
+            return;
+        }
+        for (String value : values) {
+            String normalized = normalizer.apply(value);
+            if (normalized != null) {
+                appendCsv(rows, gutendexId).append(',');
+                appendCsv(rows, normalized).append('\n');
+            }
+        }
+    }
+
+    // Numbers and nulls (an empty unquoted field) are written as they are
+    private static StringBuilder appendCsv(StringBuilder rows, Number value) {
+        return value != null ? rows.append(value) : rows;
+    }
+
+    // Text is always quoted, so an empty string stays distinct from null
+    private static StringBuilder appendCsv(StringBuilder rows, String value) {
+        if (value == null) {
+            return rows;
+        }
+        rows.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                rows.append('"');
+            }
+            rows.append(c);
+        }
+        return rows.append('"');
+    }
+
+    private static boolean isBlank(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!Character.isWhitespace(bytes[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // CSV rows of one chunk for each staging table, and how many lines it had
+    private static final class ParsedChunk {
+
+        final StringBuilder books;
+        final StringBuilder authors = new StringBuilder();
+        final StringBuilder languages = new StringBuilder();
+        final StringBuilder subjects = new StringBuilder();
+        int records;
+        int invalid;
+
+        ParsedChunk(int chunkSize) {
+            books = new StringBuilder(chunkSize);
+        }
+    }
+
+    private record Staged(int records, int invalid) {}
+
+    /**
+     * Summary of a catalog load.
+     * @param records Non-blank lines read
+     * @param invalid Lines skipped because they weren't a book with an id and a title
+     * @param booksInserted New books written (the rest were already in the library or repeated)
+     * @param authorsInserted New authors written
+     * @param elapsed Time taken
+     */
+    public record LoadResult(int records, int invalid, int booksInserted, int authorsInserted, Duration elapsed) {
+
+        @Override
+        public String toString() {
+            return booksInserted + " books and " + authorsInserted + " authors added from " + records +
+                   " records (" + invalid + " invalid) in " + elapsed.toMillis() + " ms";
+        }
+    }
+}
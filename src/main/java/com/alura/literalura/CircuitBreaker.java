@@ -0,0 +1,88 @@
+package com.alura.literalura;
+
+import java.time.Clock;
+import java.time.Duration;
+
+/**
+ * Stops calling a service that keeps failing.
+ * After a number of failures in a row the breaker opens and calls fail
+ * right away. Once the open period is over, one trial call is let through:
+ * if it works the breaker closes again, otherwise it stays open.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final Clock clock;
+
+    // Guarded by this
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialRunning;
+    private long rejectedCalls;
+
+    public CircuitBreaker(int failureThreshold, Duration openDuration) {
+        this(failureThreshold, openDuration, Clock.systemUTC());
+    }
+
+    CircuitBreaker(int failureThreshold, Duration openDuration, Clock clock) {
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.clock = clock;
+    }
+
+    /**
+     * Asks for permission to make a call.
+     * @return true if the call may go ahead; false if it must fail fast
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && clock.millis() - openedAt >= openDuration.toMillis()) {
+            state = State.HALF_OPEN;
+            trialRunning = false;
+        }
+        if (state == State.CLOSED || (state == State.HALF_OPEN && !trialRunning)) {
+            trialRunning = state == State.HALF_OPEN;
+            return true;
+        }
+        rejectedCalls++;
+        return false;
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialRunning = false;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = clock.millis();
+        }
+        trialRunning = false;
+    }
+
+    /**
+     * Call for a request that ended without saying anything about the
+     * service's health (e.g. a 404), so a half-open trial slot is freed.
+     */
+    public synchronized void recordIgnored() {
+        trialRunning = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    public synchronized long getRejectedCalls() {
+        return rejectedCalls;
+    }
+}
@@ -0,0 +1,149 @@
+package com.alura.literalura;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Maps language codes and subject headings to the ids of their rows in the
+ * languages and subjects tables, adding the rows that are missing.
+ * Both tables are small next to the books that use them, so every id is
+ * kept in memory once known (see KnownIds); unknown values are upserted
+ * together in one statement, in the caller's transaction. Values are upserted
+ * in sorted order, so two imports adding the same values lock them in the
+ * same order and can't deadlock.
+ */
+@Component
+public class DictionaryResolver {
+
+    private static final String UPSERT_LANGUAGES =
+            "INSERT INTO languages (id, code) " +
+            "SELECT nextval('languages_seq'), t.value FROM unnest(?::text[]) AS t(value) ORDER BY t.value " +
+            "ON CONFLICT (code) DO UPDATE SET code = EXCLUDED.code " +
+            "RETURNING id, code AS value";
+
+    private static final String UPSERT_SUBJECTS =
+            "INSERT INTO subjects (id, name) " +
+            "SELECT nextval('subjects_seq'), t.value FROM unnest(?::text[]) AS t(value) ORDER BY t.value " +
+            "ON CONFLICT (name) DO UPDATE SET name = EXCLUDED.name " +
+            "RETURNING id, name AS value";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final KnownIds languageIds = new KnownIds();
+    private final KnownIds subjectIds = new KnownIds();
+
+    /**
+     * @param codes Language codes as given by the source
+     * @return Languages with their ids (and codes), in order, without repeats
+     */
+    public List<Language> languages(Collection<String> codes) {
+        List<Language> languages = new ArrayList<>();
+        languageIds(codes).forEach((code, id) -> {
+            Language language = new Language(code);
+            language.setId(id);
+            languages.add(language);
+        });
+        return languages;
+    }
+
+    /**
+     * @param names Subject headings as given by the source
+     * @return Subjects with their ids (and names), in order, without repeats
+     */
+    public List<Subject> subjects(Collection<String> names) {
+        List<Subject> subjects = new ArrayList<>();
+        subjectIds(names).forEach((name, id) -> {
+            Subject subject = new Subject(name);
+            subject.setId(id);
+            subjects.add(subject);
+        });
+        return subjects;
+    }
+
+    /**
+     * @param codes Language codes as given by the source
+     * @return Id per normalized code, in order; blank codes are left out
+     */
+    public Map<String, Long> languageIds(Collection<String> codes) {
+        return resolve(codes, DictionaryResolver::normalizeLanguage, languageIds, UPSERT_LANGUAGES);
+    }
+
+    /**
+     * @param names Subject headings as given by the source
+     * @return Id per normalized heading, in order; blank headings are left out
+     */
+    public Map<String, Long> subjectIds(Collection<String> names) {
+        return resolve(names, DictionaryResolver::normalizeSubject, subjectIds, UPSERT_SUBJECTS);
+    }
+
+    /**
+     * Forgets all known ids, e.g. after rows were deleted with plain SQL.
+     */
+    public void clear() {
+        languageIds.clear();
+        subjectIds.clear();
+    }
+
+    /**
+     * @param code A language code or name ("en", "English", "ENGLISH")
+     * @return The ISO 639 code ("en"), see LanguageCodes; null if blank
+     */
+    public static String normalizeLanguage(String code) {
+        return LanguageCodes.normalize(code);
+    }
+
+    /**
+     * @param name A subject heading
+     * @return The heading trimmed, or null if blank
+     */
+    public static String normalizeSubject(String name) {
+        return name == null || name.isBlank() ? null : name.trim();
+    }
+
+    private Map<String, Long> resolve(Collection<String> values, Function<String, String> normalizer,
+                                      KnownIds known, String upsert) {
+        Set<String> wanted = new LinkedHashSet<>();
+        if (values != null) {
+            for (String value : values) {
+                String normalized = normalizer.apply(value);
+                if (normalized != null) {
+                    wanted.add(normalized);
+                }
+            }
+        }
+
+        Map<String, Long> ids = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String value : wanted) {
+            Long id = known.get(value);
+            ids.put(value, id);
+            if (id == null) {
+                missing.add(value);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            Map<String, Long> upserted = new HashMap<>();
+            jdbcTemplate.query(upsert,
+                    ps -> ps.setArray(1, ps.getConnection().createArrayOf("text", missing.toArray())),
+                    rs -> {
+                        upserted.put(rs.getString("value"), rs.getLong("id"));
+                    });
+            known.putAll(upserted);
+            ids.putAll(upserted);
+        }
+        return ids;
+    }
+}
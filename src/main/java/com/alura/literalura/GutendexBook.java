@@ -2,6 +2,7 @@ package com.alura.literalura;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * Represents a book from Gutendex API response.
@@ -12,7 +13,7 @@ public class GutendexBook {
     
     private Integer id;
     private String title;
-    private List<String> authors;
+    private List<GutendexPerson> authors;
     private List<String> languages;
     private Integer download_count;
     private List<String> subjects;
@@ -37,11 +38,11 @@ public class GutendexBook {
         this.title = title;
     }
     
-    public List<String> getAuthors() {
+    public List<GutendexPerson> getAuthors() {
         return authors;
     }
     
-    public void setAuthors(List<String> authors) {
+    public void setAuthors(List<GutendexPerson> authors) {
         this.authors = authors;
     }
     
@@ -72,7 +73,8 @@ public class GutendexBook {
     @Override
     public String toString() {
         return "Title: " + title + 
-               (authors != null && !authors.isEmpty() ? " by " + String.join(", ", authors) : "") +
+               (authors != null && !authors.isEmpty()
+                       ? " by " + authors.stream().map(GutendexPerson::getName).collect(Collectors.joining(", ")) : "") +
                (languages != null && !languages.isEmpty() ? " [" + String.join(", ", languages) + "]" : "");
     }
 }
@@ -0,0 +1,170 @@
+package com.alura.literalura;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Searches Gutendex by title, author and language at the same time.
+ * Each field is a separate search; its first page is fetched, then the
+ * following pages (up to gutendex.search.max-pages) all at once, every
+ * request on its own virtual thread. Results are merged by Gutendex id and
+ * ranked by download count. Everything shares one deadline: whatever
+ * arrived by then is returned, and the result says it is partial.
+ */
+@Service
+public class GutendexCombinedSearch {
+
+    private static final Logger log = LoggerFactory.getLogger(GutendexCombinedSearch.class);
+
+    // Gutendex always returns 32 books per page
+    private static final int PAGE_SIZE = 32;
+
+    @Autowired
+    private GutendexService gutendexService;
+
+    @Value("${gutendex.search.deadline:PT3S}")
+    private Duration deadline;
+
+    // Pages fetched per field, including the first
+    @Value("${gutendex.search.max-pages:3}")
+    private int maxPages;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Searches every given field in parallel. Blank fields are skipped.
+     * @param title Title to search for (may be null)
+     * @param author Author name to search for (may be null)
+     * @param language Language code (may be null)
+     * @return Merged books, most downloaded first, with how many pages made it in time
+     */
+    public CombinedResult search(String title, String author, String language) {
+        long deadlineNanos = System.nanoTime() + deadline.toNanos();
+        Progress progress = new Progress();
+
+        List<CompletableFuture<Void>> branches = new ArrayList<>();
+        if (isPresent(title)) {
+            branches.add(branch(gutendexService.titleSearchUrl(title), progress));
+        }
+        if (isPresent(author)) {
+            branches.add(branch(gutendexService.authorSearchUrl(author), progress));
+        }
+        if (isPresent(language)) {
+            branches.add(branch(gutendexService.languageSearchUrl(language), progress));
+        }
+
+        try {
+            CompletableFuture.allOf(branches.toArray(CompletableFuture[]::new))
+                    .get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Keep what arrived; pages still in flight finish in the background and land in the response cache
+            branches.forEach(branch -> branch.cancel(true));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Page failures are counted in fetch(), so this only happens on a bug
+            log.error("Combined search failed", e.getCause());
+        }
+
+        List<GutendexBook> books = new ArrayList<>(progress.books.values());
+        books.sort(Comparator.comparing(GutendexBook::getDownload_count, Comparator.nullsLast(Comparator.reverseOrder()))
+                .thenComparing(GutendexBook::getId));
+        int fetched = progress.fetched.get();
+        int failed = progress.failed.get();
+        return new CombinedResult(books, fetched, failed, progress.started.get() - fetched - failed);
+    }
+
+    /**
+     * Fetches the first page of a search, then its following pages in parallel.
+     */
+    private CompletableFuture<Void> branch(String firstPageUrl, Progress progress) {
+        return fetch(firstPageUrl, progress).thenCompose(first -> {
+            if (first == null || first.getCount() == null) {
+                return CompletableFuture.completedFuture(null);
+            }
+            int pages = Math.min(maxPages, (first.getCount() + PAGE_SIZE - 1) / PAGE_SIZE);
+            List<CompletableFuture<GutendexResponse>> rest = new ArrayList<>();
+            for (int page = 2; page <= pages; page++) {
+                rest.add(fetch(firstPageUrl + "&page=" + page, progress));
+            }
+            return CompletableFuture.allOf(rest.toArray(CompletableFuture[]::new));
+        });
+    }
+
+    /**
+     * Fetches one page and adds its books to the merged results.
+     * A failed page completes with null instead of failing the whole search.
+     */
+    private CompletableFuture<GutendexResponse> fetch(String url, Progress progress) {
+        progress.started.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                GutendexResponse page = gutendexService.fetchCachedPage(url);
+                if (page.getResults() != null) {
+                    for (GutendexBook book : page.getResults()) {
+                        if (book.getId() != null) {
+                            progress.books.putIfAbsent(book.getId(), book);
+                        }
+                    }
+                }
+                progress.fetched.incrementAndGet();
+                return page;
+            } catch (GutendexException e) {
+                log.warn("Error in combined search: {}", e.getMessage());
+                progress.failed.incrementAndGet();
+                return null;
+            }
+        }, executor);
+    }
+
+    private static boolean isPresent(String value) {
+        return value != null && !value.isBlank();
+    }
+
+    private static final class Progress {
+        final Map<Integer, GutendexBook> books = new ConcurrentHashMap<>();
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger fetched = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+    }
+
+    /**
+     * Result of a combined search.
+     * @param books Books found, most downloaded first, each once
+     * @param pagesFetched Pages that arrived in time
+     * @param pagesFailed Pages that failed
+     * @param pagesTimedOut Pages still pending at the deadline
+     */
+    public record CombinedResult(List<GutendexBook> books, int pagesFetched, int pagesFailed, int pagesTimedOut) {
+
+        /**
+         * @return Whether some pages are missing from the results
+         */
+        public boolean isPartial() {
+            return pagesFailed > 0 || pagesTimedOut > 0;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.alura.literalura;
+
+/**
+ * Thrown when a Gutendex page cannot be fetched or parsed.
+ * Used by callers that need to tell a failure apart from an empty result.
+ * The kind tells whether trying again later can help.
+ */
+public class GutendexException extends RuntimeException {
+
+    /**
+     * What went wrong.
+     */
+    public enum Kind {
+        // Connection failed, timed out or broke off
+        NETWORK(true),
+        // Gutendex answered with a 5xx status
+        SERVER_ERROR(true),
+        // Gutendex answered with 429 Too Many Requests
+        RATE_LIMITED(true),
+        // Gutendex answered with another 4xx status (e.g. unknown page)
+        CLIENT_ERROR(false),
+        // The response wasn't the JSON we expected
+        INVALID_RESPONSE(false),
+        // Too many recent failures; the call was not even attempted
+        CIRCUIT_OPEN(false),
+        // The calling thread was interrupted
+        INTERRUPTED(false);
+
+        private final boolean retryable;
+
+        Kind(boolean retryable) {
+            this.retryable = retryable;
+        }
+
+        public boolean isRetryable() {
+            return retryable;
+        }
+    }
+
+    private final Kind kind;
+
+    public GutendexException(Kind kind, String message, Throwable cause) {
+        super(message, cause);
+        this.kind = kind;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Maps an HTTP error status to the matching kind.
+     * @param status The HTTP status code
+     * @return The failure kind
+     */
+    public static Kind kindOf(int status) {
+        if (status == 429) {
+            return Kind.RATE_LIMITED;
+        }
+        return status >= 500 ? Kind.SERVER_ERROR : Kind.CLIENT_ERROR;
+    }
+}
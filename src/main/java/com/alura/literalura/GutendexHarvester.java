@@ -0,0 +1,213 @@
+package com.alura.literalura;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Walks every page of the Gutendex catalog and hands the books to a writer.
+ * Pages are fetched in parallel (up to a configurable limit) and the writer
+ * runs on the calling thread. A page keeps its fetch permit until it has been
+ * written, so a slow writer (or one slow page) makes the fetchers wait instead
+ * of piling pages up in memory: at most the concurrency limit of pages are
+ * held at once, whether downloading, queued or waiting for an earlier page,
+ * however far the harvest is behind.
+ * The catalog is walked in id order, so page contents don't shift between
+ * runs. The last page written in order is saved to a checkpoint file, so a
+ * crashed harvest continues from there on the next run.
+ */
+@Service
+public class GutendexHarvester {
+
+    private static final Logger log = LoggerFactory.getLogger(GutendexHarvester.class);
+
+    // Gutendex always returns 32 books per page
+    private static final int PAGE_SIZE = 32;
+    private static final Pattern PAGE_PARAM = Pattern.compile("[?&]page=(\\d+)");
+
+    @Autowired
+    private GutendexService gutendexService;
+
+    @Value("${gutendex.harvest.concurrency:4}")
+    private int concurrency;
+
+    @Value("${gutendex.harvest.checkpoint-file:gutendex-harvest.checkpoint}")
+    private Path checkpointFile;
+
+    /**
+     * Harvests the whole catalog, resuming from the checkpoint if there is one.
+     * @param writer Receives the books of each page, in page order
+     * @return Summary of the run
+     * @throws GutendexException if a page could not be fetched (after retries); the checkpoint is kept
+     * @throws UncheckedIOException if the checkpoint file cannot be read or written
+     */
+    public HarvestResult harvest(Consumer<List<GutendexBook>> writer) {
+        int firstPage = readCheckpoint()
+                // Older checkpoints were taken on the popularity order, whose pages shift between runs
+                .filter(url -> url.contains(GutendexService.CATALOG_SORT))
+                .map(GutendexHarvester::pageNumber).orElse(0) + 1;
+
+        // The first page is fetched up front to learn how many pages there are
+        List<GutendexBook> firstBooks = new ArrayList<>(PAGE_SIZE);
+        GutendexService.PageInfo first;
+        try {
+            first = gutendexService.streamPage(gutendexService.catalogPageUrl(firstPage), firstBooks::add);
+        } catch (GutendexException e) {
+            // The checkpoint is the last page: Gutendex answers 404 for the one after it
+            if (firstPage > 1 && e.getKind() == GutendexException.Kind.CLIENT_ERROR) {
+                deleteCheckpoint();
+                return new HarvestResult(firstPage, 0, 0);
+            }
+            throw e;
+        }
+        int lastPage = first.count() == null ? firstPage : (int) Math.ceil((double) first.count() / PAGE_SIZE);
+
+        writer.accept(firstBooks);
+        writeCheckpoint(gutendexService.catalogPageUrl(firstPage));
+        int booksWritten = firstBooks.size();
+        int pagesWritten = 1;
+
+        // Never blocks: only pages holding a permit are put in it
+        BlockingQueue<PageResult> queue = new ArrayBlockingQueue<>(concurrency);
+        Semaphore permits = new Semaphore(concurrency);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            executor.submit(() -> dispatch(firstPage + 1, lastPage, permits, queue, executor));
+
+            try {
+                // Pages can arrive out of order; they are written once all earlier pages are in.
+                // Each one still holds its permit, so this never holds more than the concurrency limit.
+                Map<Integer, PageResult> pending = new TreeMap<>();
+                int nextToWrite = firstPage + 1;
+                while (nextToWrite <= lastPage) {
+                    PageResult result = queue.take();
+                    if (result.error() != null) {
+                        throw result.error();
+                    }
+                    pending.put(result.page(), result);
+
+                    while (pending.containsKey(nextToWrite)) {
+                        PageResult ready = pending.remove(nextToWrite);
+                        writer.accept(ready.books());
+                        writeCheckpoint(ready.url());
+                        permits.release();
+                        booksWritten += ready.books().size();
+                        pagesWritten++;
+                        nextToWrite++;
+                    }
+                }
+            } finally {
+                // Stops fetchers that are still running or waiting on a full queue
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GutendexException(GutendexException.Kind.INTERRUPTED, "Harvest interrupted", e);
+        }
+
+        deleteCheckpoint();
+        return new HarvestResult(firstPage, pagesWritten, booksWritten);
+    }
+
+    /**
+     * Starts one fetch per page, never more than the concurrency limit at once.
+     * A permit is only returned after the page is written, so pages waiting for
+     * an earlier one to arrive also stop new fetches from starting.
+     */
+    private void dispatch(int fromPage, int toPage, Semaphore permits,
+                          BlockingQueue<PageResult> queue, ExecutorService executor) {
+        try {
+            for (int page = fromPage; page <= toPage; page++) {
+                permits.acquire();
+                int current = page;
+                executor.submit(() -> {
+                    try {
+                        queue.put(fetch(current));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private PageResult fetch(int page) {
+        String url = gutendexService.catalogPageUrl(page);
+        try {
+            List<GutendexBook> books = new ArrayList<>(PAGE_SIZE);
+            gutendexService.streamPage(url, books::add);
+            return new PageResult(page, url, books, null);
+        } catch (GutendexException e) {
+            return new PageResult(page, url, List.of(), e);
+        }
+    }
+
+    private Optional<String> readCheckpoint() {
+        try {
+            if (Files.exists(checkpointFile)) {
+                String url = Files.readString(checkpointFile).trim();
+                return url.isEmpty() ? Optional.empty() : Optional.of(url);
+            }
+            return Optional.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading harvest checkpoint " + checkpointFile, e);
+        }
+    }
+
+    private void writeCheckpoint(String url) {
+        try {
+            // Write to a temp file first so a crash never leaves a half-written checkpoint
+            Path temp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+            Files.writeString(temp, url);
+            Files.move(temp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing harvest checkpoint " + checkpointFile, e);
+        }
+    }
+
+    private void deleteCheckpoint() {
+        try {
+            Files.deleteIfExists(checkpointFile);
+        } catch (IOException e) {
+            log.warn("Could not delete harvest checkpoint: {}", e.getMessage());
+        }
+    }
+
+    private static int pageNumber(String url) {
+        Matcher matcher = PAGE_PARAM.matcher(url);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : 1;
+    }
+
+    private record PageResult(int page, String url, List<GutendexBook> books, GutendexException error) {}
+
+    /**
+     * Summary of a harvest run.
+     * @param startPage The page the run started from (greater than 1 when resumed)
+     * @param pages Number of pages written
+     * @param books Number of books handed to the writer
+     */
+    public record HarvestResult(int startPage, int pages, int books) {}
+}
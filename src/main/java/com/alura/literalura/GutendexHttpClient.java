@@ -0,0 +1,340 @@
+package com.alura.literalura;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP transport for the Gutendex API, built on the JDK HttpClient.
+ * Connections are pooled and kept alive, HTTP/2 is used when the server
+ * supports it, responses are requested gzip-compressed, and every request
+ * has a timeout. Async calls run on virtual threads. The pool size and
+ * keep-alive are JVM-wide settings of the JDK client, read once, so they are
+ * set as JVM options (-Djdk.httpclient.connectionPoolSize,
+ * -Djdk.httpclient.keepalive.timeout), not here.
+ *
+ * Requests are also protected: a token bucket limits the request rate,
+ * transient failures are retried with exponential backoff and jitter, and a
+ * circuit breaker fails fast while Gutendex keeps failing.
+ *
+ * Every request is observed as "gutendex.requests" (a timer per endpoint and
+ * outcome, and a span when tracing is on), and the size of every response
+ * body is recorded in "gutendex.response.size".
+ */
+@Component
+public class GutendexHttpClient {
+
+    @Value("${gutendex.http.connect-timeout:PT5S}")
+    private Duration connectTimeout;
+
+    @Value("${gutendex.http.read-timeout:PT30S}")
+    private Duration readTimeout;
+
+    @Value("${gutendex.http.version:HTTP_2}")
+    private HttpClient.Version version;
+
+    @Value("${gutendex.retry.max-attempts:4}")
+    private int maxAttempts;
+
+    @Value("${gutendex.retry.initial-backoff:PT0.5S}")
+    private Duration initialBackoff;
+
+    @Value("${gutendex.retry.max-backoff:PT10S}")
+    private Duration maxBackoff;
+
+    @Value("${gutendex.circuit-breaker.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${gutendex.circuit-breaker.open-duration:PT30S}")
+    private Duration openDuration;
+
+    @Value("${gutendex.rate-limit.permits-per-second:5}")
+    private double permitsPerSecond;
+
+    @Value("${gutendex.rate-limit.burst:10}")
+    private int burst;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
+    private ExecutorService executor;
+    private HttpClient client;
+    private CircuitBreaker circuitBreaker;
+    private TokenBucket rateLimiter;
+    private final AtomicLong retries = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        client = HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(connectTimeout)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+        circuitBreaker = new CircuitBreaker(failureThreshold, openDuration);
+        rateLimiter = new TokenBucket(permitsPerSecond, burst);
+    }
+
+    @PreDestroy
+    public void close() {
+        client.close();
+        executor.close();
+    }
+
+    /**
+     * Sends a GET request and returns the body as text.
+     * @param url The request URL
+     * @return The response body
+     * @throws GutendexException if the request fails or the status is not 2xx
+     */
+    public String get(String url) {
+        try (InputStream body = open(url)) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new GutendexException(GutendexException.Kind.NETWORK, "Error reading response from " + url, e);
+        }
+    }
+
+    /**
+     * Sends a GET request and returns the body as a stream, for incremental parsing.
+     * The caller must close the stream.
+     * @param url The request URL
+     * @return The (decompressed) response body
+     * @throws GutendexException if the request fails or the status is not 2xx
+     */
+    public InputStream open(String url) {
+        String endpoint = endpointOf(url);
+        Observation observation = Observation.createNotStarted("gutendex.requests", observationRegistry)
+                .contextualName("gutendex " + endpoint)
+                .lowCardinalityKeyValue("endpoint", endpoint)
+                .highCardinalityKeyValue("url", url)
+                .start();
+        try (Observation.Scope scope = observation.openScope()) {
+            InputStream body = send(url);
+            observation.lowCardinalityKeyValue("outcome", "SUCCESS");
+            // The request is timed until its body has been read and closed
+            return new MeteredBody(body, observation, DistributionSummary.builder("gutendex.response.size")
+                    .description("Size of Gutendex response bodies, decompressed")
+                    .baseUnit("bytes")
+                    .tag("endpoint", endpoint)
+                    .register(meterRegistry));
+        } catch (GutendexException e) {
+            observation.lowCardinalityKeyValue("outcome", e.getKind().name());
+            observation.error(e);
+            observation.stop();
+            throw e;
+        }
+    }
+
+    private InputStream send(String url) {
+        for (int attempt = 1; ; attempt++) {
+            if (!circuitBreaker.tryAcquire()) {
+                throw new GutendexException(GutendexException.Kind.CIRCUIT_OPEN,
+                        "Gutendex is failing, not calling " + url, null);
+            }
+
+            try {
+                rateLimiter.acquire();
+                InputStream body = decode(url, client.send(request(url), HttpResponse.BodyHandlers.ofInputStream()));
+                circuitBreaker.recordSuccess();
+                return body;
+            } catch (GutendexException e) {
+                recordFailure(e);
+                if (!e.getKind().isRetryable() || attempt >= maxAttempts) {
+                    throw e;
+                }
+            } catch (IOException e) {
+                circuitBreaker.recordFailure();
+                if (attempt >= maxAttempts) {
+                    throw new GutendexException(GutendexException.Kind.NETWORK, "Error requesting " + url, e);
+                }
+            } catch (InterruptedException e) {
+                circuitBreaker.recordIgnored();
+                Thread.currentThread().interrupt();
+                throw new GutendexException(GutendexException.Kind.INTERRUPTED, "Interrupted while requesting " + url, e);
+            }
+
+            retries.incrementAndGet();
+            backoff(attempt, url);
+        }
+    }
+
+    /**
+     * Sends a GET request without blocking the caller.
+     * @param url The request URL
+     * @return Future completing with the response body
+     */
+    public CompletableFuture<String> getAsync(String url) {
+        // Retries and rate limiting block, which is cheap on a virtual thread
+        return CompletableFuture.supplyAsync(() -> get(url), executor);
+    }
+
+    /**
+     * @return Current state of the circuit breaker, rate limiter and retries
+     */
+    public ResilienceStats resilienceStats() {
+        return new ResilienceStats(circuitBreaker.getState(), circuitBreaker.getConsecutiveFailures(),
+                circuitBreaker.getRejectedCalls(), retries.get(), rateLimiter.availableTokens(), rateLimiter.getWaits());
+    }
+
+    /**
+     * Names the kind of request, for metric tags; full URLs would create a metric per search.
+     */
+    static String endpointOf(String url) {
+        int query = url.indexOf('?');
+        String params = query >= 0 ? url.substring(query + 1) : "";
+        if (params.startsWith("ids=")) {
+            return "ids";
+        }
+        if (params.startsWith("search=")) {
+            return "search";
+        }
+        if (params.startsWith("languages=")) {
+            return "languages";
+        }
+        if (params.isEmpty() || params.contains("page=")) {
+            return "catalog";
+        }
+        return "other";
+    }
+
+    private void recordFailure(GutendexException e) {
+        // A 404 or bad request says nothing about whether Gutendex is healthy
+        if (e.getKind().isRetryable()) {
+            circuitBreaker.recordFailure();
+        } else {
+            circuitBreaker.recordIgnored();
+        }
+    }
+
+    /**
+     * Waits before the next attempt: exponential backoff with full jitter,
+     * so many failing callers don't all retry at the same moment.
+     */
+    private void backoff(int attempt, String url) {
+        long ceiling = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GutendexException(GutendexException.Kind.INTERRUPTED, "Interrupted while retrying " + url, e);
+        }
+    }
+
+    private HttpRequest request(String url) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(readTimeout)
+                .header("Accept", "application/json")
+                .header("Accept-Encoding", "gzip")
+                .GET()
+                .build();
+    }
+
+    private InputStream decode(String url, HttpResponse<InputStream> response) throws IOException {
+        InputStream body = response.body();
+        if (response.statusCode() / 100 != 2) {
+            body.close();
+            throw new GutendexException(GutendexException.kindOf(response.statusCode()),
+                    "HTTP " + response.statusCode() + " from " + url, null);
+        }
+        boolean gzip = response.headers().firstValue("Content-Encoding")
+                .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+                .orElse(false);
+        if (!gzip) {
+            return body;
+        }
+        try {
+            // Reads the gzip header right away; a broken one would otherwise leave the connection taken
+            return new GZIPInputStream(body);
+        } catch (IOException | RuntimeException e) {
+            body.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Response body that counts the bytes read and ends the request's observation when closed.
+     */
+    private static final class MeteredBody extends FilterInputStream {
+
+        private final Observation observation;
+        private final DistributionSummary size;
+        private long bytes;
+        private boolean closed;
+
+        MeteredBody(InputStream body, Observation observation, DistributionSummary size) {
+            super(body);
+            this.observation = observation;
+            this.size = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                bytes += n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    size.record(bytes);
+                    observation.stop();
+                }
+            }
+        }
+    }
+
+    /**
+     * Resilience state, for monitoring.
+     * @param circuitState Circuit breaker state
+     * @param consecutiveFailures Failures in a row so far
+     * @param rejectedCalls Calls failed fast while the circuit was open
+     * @param retries Retry attempts made
+     * @param availableTokens Rate limiter tokens available now
+     * @param rateLimitWaits Times a request had to wait for the rate limiter
+     */
+    public record ResilienceStats(CircuitBreaker.State circuitState, int consecutiveFailures, long rejectedCalls,
+                                  long retries, double availableTokens, long rateLimitWaits) {}
+}
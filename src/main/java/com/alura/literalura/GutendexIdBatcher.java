@@ -0,0 +1,156 @@
+package com.alura.literalura;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Collects lookups by id for a short time and sends them as one request.
+ * The first lookup starts a small time window; every lookup made during the
+ * window joins the same batch, and a full batch is sent right away. Each
+ * caller gets a future that completes with its own book. After shutdown,
+ * waiting and new lookups fail with an INTERRUPTED GutendexException.
+ */
+public class GutendexIdBatcher {
+
+    private final Function<List<Integer>, Map<Integer, GutendexBook>> fetcher;
+    private final Duration window;
+    private final int maxBatchSize;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "gutendex-id-batcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Guarded by this; the same id asked twice in a window shares one future
+    private Map<Integer, CompletableFuture<Optional<GutendexBook>>> pending = new HashMap<>();
+    // Guarded by this; timer of the current window, and which window it is
+    private ScheduledFuture<?> windowTimer;
+    private long windowNumber;
+    // Guarded by this; set by shutdown
+    private boolean closed;
+
+    /**
+     * @param fetcher Fetches many books at once, keyed by id
+     * @param window How long to wait for more lookups before sending a batch
+     * @param maxBatchSize Batch size that is sent without waiting
+     */
+    public GutendexIdBatcher(Function<List<Integer>, Map<Integer, GutendexBook>> fetcher,
+                             Duration window, int maxBatchSize) {
+        this.fetcher = fetcher;
+        this.window = window;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Queues a lookup by id.
+     * @param id The Gutendex book id
+     * @return Future with the book, or empty if Gutendex doesn't know the id
+     */
+    public CompletableFuture<Optional<GutendexBook>> lookup(Integer id) {
+        Map<Integer, CompletableFuture<Optional<GutendexBook>>> full = null;
+        CompletableFuture<Optional<GutendexBook>> future;
+
+        synchronized (this) {
+            if (closed) {
+                return CompletableFuture.failedFuture(shutDown());
+            }
+            future = pending.get(id);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                if (pending.isEmpty()) {
+                    long current = windowNumber;
+                    windowTimer = timer.schedule(() -> flush(current), window.toNanos(), TimeUnit.NANOSECONDS);
+                }
+                // Only added once the window has a timer, so a failed schedule leaves nothing behind
+                pending.put(id, future);
+                if (pending.size() >= maxBatchSize) {
+                    full = takePending();
+                }
+            }
+        }
+
+        if (full != null) {
+            send(full);
+        }
+        return future;
+    }
+
+    /**
+     * Stops the timer and request threads. Lookups still waiting for their
+     * window fail; batches already sent fail when their request is interrupted.
+     */
+    public void shutdown() {
+        Map<Integer, CompletableFuture<Optional<GutendexBook>>> abandoned;
+        synchronized (this) {
+            closed = true;
+            abandoned = takePending();
+        }
+        timer.shutdownNow();
+        requests.shutdownNow();
+        fail(abandoned, shutDown());
+    }
+
+    private void flush(long number) {
+        Map<Integer, CompletableFuture<Optional<GutendexBook>>> batch;
+        synchronized (this) {
+            // The window's batch already went out for being full; a later window has its own timer
+            if (number != windowNumber) {
+                return;
+            }
+            batch = takePending();
+        }
+        send(batch);
+    }
+
+    /**
+     * Ends the current window: takes its batch and cancels its timer, so the
+     * timer can't send the next window's batch early. Must hold the lock.
+     */
+    private Map<Integer, CompletableFuture<Optional<GutendexBook>>> takePending() {
+        Map<Integer, CompletableFuture<Optional<GutendexBook>>> batch = pending;
+        pending = new HashMap<>();
+        if (windowTimer != null) {
+            windowTimer.cancel(false);
+            windowTimer = null;
+        }
+        windowNumber++;
+        return batch;
+    }
+
+    private void send(Map<Integer, CompletableFuture<Optional<GutendexBook>>> batch) {
+        try {
+            requests.submit(() -> {
+                try {
+                    Map<Integer, GutendexBook> books = fetcher.apply(List.copyOf(batch.keySet()));
+                    batch.forEach((id, future) -> future.complete(Optional.ofNullable(books.get(id))));
+                } catch (RuntimeException e) {
+                    fail(batch, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shut down between taking the batch and sending it
+            fail(batch, shutDown());
+        }
+    }
+
+    private static void fail(Map<Integer, CompletableFuture<Optional<GutendexBook>>> batch, RuntimeException e) {
+        batch.values().forEach(future -> future.completeExceptionally(e));
+    }
+
+    private static GutendexException shutDown() {
+        return new GutendexException(GutendexException.Kind.INTERRUPTED, "Id lookups are shut down", null);
+    }
+}
@@ -0,0 +1,60 @@
+package com.alura.literalura;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Represents an author (or translator) from a Gutendex book.
+ * Simple DTO to map API response fields.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GutendexPerson {
+
+    private String name;
+    private Integer birth_year;
+    private Integer death_year;
+
+    // Default constructor
+    public GutendexPerson() {}
+
+    // Constructor with name
+    public GutendexPerson(String name) {
+        this.name = name;
+    }
+
+    // Older cached pages and catalog dumps list authors as plain names
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    public static GutendexPerson fromName(String name) {
+        return new GutendexPerson(name);
+    }
+
+    // Getters and setters
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Integer getBirth_year() {
+        return birth_year;
+    }
+
+    public void setBirth_year(Integer birth_year) {
+        this.birth_year = birth_year;
+    }
+
+    public Integer getDeath_year() {
+        return death_year;
+    }
+
+    public void setDeath_year(Integer death_year) {
+        this.death_year = death_year;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,334 @@
+package com.alura.literalura;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Caches Gutendex response bodies by request URL.
+ * Entries expire after a configurable time (an expired entry is dropped when
+ * it is next asked for) and the least recently used entry is dropped once the
+ * cache is full. Every entry is also written to a small
+ * gzip file, so the cache survives a restart. When several threads ask for the
+ * same uncached URL at once, only one of them calls Gutendex and the others
+ * wait for its answer.
+ */
+@Component
+public class GutendexResponseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(GutendexResponseCache.class);
+
+    @Value("${gutendex.cache.ttl:PT1H}")
+    private Duration ttl;
+
+    @Value("${gutendex.cache.max-entries:1000}")
+    private int maxEntries;
+
+    // Empty means memory only
+    @Value("${gutendex.cache.directory:gutendex-cache}")
+    private String directory;
+
+    private final Clock clock = Clock.systemUTC();
+    private final ConcurrentMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // Access-ordered, so the first entry is always the least recently used one.
+    // Only held for map operations; files are read, written and deleted outside the lock.
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    // A key's file is only written or deleted under its stripe, after checking the map,
+    // so a put racing an eviction of the same key can't leave a file the map doesn't have
+    private final Object[] fileLocks = Stream.generate(Object::new).limit(64).toArray();
+
+    /**
+     * Loads the entries saved by a previous run that haven't expired yet.
+     */
+    @PostConstruct
+    public void loadFromDisk() {
+        Path dir = cacheDirectory();
+        if (dir == null || !Files.isDirectory(dir)) {
+            return;
+        }
+
+        List<Map.Entry<String, Entry>> loaded = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.filter(f -> f.toString().endsWith(".gz")).toList()) {
+                Map.Entry<String, Entry> entry = readFile(file);
+                if (entry == null || isExpired(entry.getValue())) {
+                    Files.deleteIfExists(file);
+                } else {
+                    loaded.add(entry);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Error loading Gutendex cache: {}", e.getMessage());
+        }
+
+        // Oldest first, so the most recent entries survive if there are too many
+        loaded.sort(Comparator.comparingLong(entry -> entry.getValue().storedAt()));
+        List<String> evicted;
+        synchronized (entries) {
+            loaded.forEach(entry -> entries.put(entry.getKey(), entry.getValue()));
+            evicted = evictOverflow();
+        }
+        evicted.forEach(this::deleteFile);
+    }
+
+    /**
+     * Returns the cached body for a URL, or loads and caches it.
+     * @param url The request URL
+     * @param loader Fetches the body from Gutendex on a miss
+     * @return The response body
+     */
+    public String get(String url, Supplier<String> loader) {
+        String key = normalizeUrl(url);
+
+        boolean expired = false;
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (!isExpired(entry)) {
+                    hits.incrementAndGet();
+                    return entry.body();
+                }
+                // Dropped right away instead of waiting for the LRU to push it out
+                entries.remove(key);
+                expired = true;
+            }
+        }
+        misses.incrementAndGet();
+        if (expired) {
+            deleteFile(key);
+        }
+
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        CompletableFuture<String> running = inFlight.putIfAbsent(key, pending);
+        if (running != null) {
+            return await(running);
+        }
+
+        try {
+            String body = loader.get();
+            put(key, body);
+            pending.complete(body);
+        } catch (RuntimeException e) {
+            // Failures are passed to the waiting callers but never cached
+            pending.completeExceptionally(e);
+        } finally {
+            inFlight.remove(key, pending);
+        }
+        return await(pending);
+    }
+
+    /**
+     * Drops every entry, in memory and on disk.
+     */
+    public void clear() {
+        List<String> keys;
+        synchronized (entries) {
+            keys = new ArrayList<>(entries.keySet());
+            entries.clear();
+        }
+        keys.forEach(this::deleteFile);
+    }
+
+    /**
+     * @return Current hit, miss and eviction counts
+     */
+    public CacheStats stats() {
+        synchronized (entries) {
+            return new CacheStats(hits.get(), misses.get(), evictions.get(), entries.size());
+        }
+    }
+
+    private void put(String key, String body) {
+        Entry entry = new Entry(body, clock.millis());
+        List<String> evicted;
+        synchronized (entries) {
+            entries.put(key, entry);
+            evicted = evictOverflow();
+        }
+        evicted.forEach(this::deleteFile);
+        writeFile(key, entry);
+    }
+
+    /**
+     * Drops the least recently used entries while the cache is over its size.
+     * Must hold the entries lock; the caller deletes the files afterwards.
+     * @return Keys of the dropped entries
+     */
+    private List<String> evictOverflow() {
+        List<String> evicted = new ArrayList<>();
+        Iterator<String> eldest = entries.keySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            evicted.add(eldest.next());
+            eldest.remove();
+        }
+        evictions.addAndGet(evicted.size());
+        return evicted;
+    }
+
+    private boolean isExpired(Entry entry) {
+        return clock.millis() - entry.storedAt() > ttl.toMillis();
+    }
+
+    private static String await(CompletableFuture<String> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Normalizes a URL so equivalent requests share an entry:
+     * lowercase scheme and host, and query parameters in sorted order.
+     */
+    static String normalizeUrl(String url) {
+        URI uri = URI.create(url.trim());
+        String query = uri.getRawQuery();
+        String sortedQuery = "";
+        if (query != null && !query.isEmpty()) {
+            String[] params = query.split("&");
+            Arrays.sort(params);
+            sortedQuery = "?" + String.join("&", params);
+        }
+        String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+        return uri.getScheme().toLowerCase(Locale.ROOT) + "://" + uri.getRawAuthority().toLowerCase(Locale.ROOT)
+                + path + sortedQuery;
+    }
+
+    private Path cacheDirectory() {
+        return directory == null || directory.isBlank() ? null : Path.of(directory);
+    }
+
+    private Path fileFor(Path dir, String key) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return dir.resolve(HexFormat.of().formatHex(hash, 0, 16) + ".gz");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Object fileLock(String key) {
+        return fileLocks[Math.floorMod(key.hashCode(), fileLocks.length)];
+    }
+
+    /**
+     * File layout (gzip compressed): URL, time stored, body length, body bytes.
+     * Skipped if the entry was evicted or replaced in the meantime.
+     */
+    private void writeFile(String key, Entry entry) {
+        Path dir = cacheDirectory();
+        if (dir == null) {
+            return;
+        }
+        synchronized (fileLock(key)) {
+            synchronized (entries) {
+                if (entries.get(key) != entry) {
+                    return;
+                }
+            }
+            writeFile(dir, key, entry);
+        }
+    }
+
+    private void writeFile(Path dir, String key, Entry entry) {
+        try {
+            Files.createDirectories(dir);
+            Path file = fileFor(dir, key);
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            byte[] body = entry.body().getBytes(StandardCharsets.UTF_8);
+            try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(Files.newOutputStream(temp)))) {
+                out.writeUTF(key);
+                out.writeLong(entry.storedAt());
+                out.writeInt(body.length);
+                out.write(body);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Error writing Gutendex cache entry: {}", e.getMessage());
+        }
+    }
+
+    private Map.Entry<String, Entry> readFile(Path file) {
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(Files.newInputStream(file)))) {
+            String key = in.readUTF();
+            long storedAt = in.readLong();
+            byte[] body = in.readNBytes(in.readInt());
+            return Map.entry(key, new Entry(new String(body, StandardCharsets.UTF_8), storedAt));
+        } catch (IOException e) {
+            // A damaged file is treated like a missing entry
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the file of a dropped entry, unless the key was cached again in the meantime.
+     */
+    private void deleteFile(String key) {
+        Path dir = cacheDirectory();
+        if (dir == null) {
+            return;
+        }
+        synchronized (fileLock(key)) {
+            synchronized (entries) {
+                if (entries.containsKey(key)) {
+                    return;
+                }
+            }
+            try {
+                Files.deleteIfExists(fileFor(dir, key));
+            } catch (IOException e) {
+                log.warn("Error deleting Gutendex cache entry: {}", e.getMessage());
+            }
+        }
+    }
+
+    private record Entry(String body, long storedAt) {}
+
+    /**
+     * Cache counters.
+     * @param hits Lookups answered from the cache
+     * @param misses Lookups that needed Gutendex (or waited for a running request)
+     * @param evictions Entries dropped because the cache was full
+     * @param size Entries currently cached
+     */
+    public record CacheStats(long hits, long misses, long evictions, int size) {}
+}
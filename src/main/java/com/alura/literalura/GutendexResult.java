@@ -0,0 +1,42 @@
+package com.alura.literalura;
+
+import java.util.function.Function;
+
+/**
+ * Outcome of a Gutendex call: either a value or a typed failure.
+ * Lets callers tell "no results" apart from "Gutendex is down".
+ * @param <T> Type of the value
+ */
+public sealed interface GutendexResult<T> {
+
+    record Success<T>(T value) implements GutendexResult<T> {}
+
+    record Failure<T>(GutendexException.Kind kind, String message) implements GutendexResult<T> {}
+
+    static <T> GutendexResult<T> success(T value) {
+        return new Success<>(value);
+    }
+
+    static <T> GutendexResult<T> failure(GutendexException e) {
+        return new Failure<>(e.getKind(), e.getMessage());
+    }
+
+    default boolean isSuccess() {
+        return this instanceof Success<T>;
+    }
+
+    /**
+     * @param fallback Value to use on failure
+     * @return The value, or the fallback on failure
+     */
+    default T orElse(T fallback) {
+        return this instanceof Success<T> success ? success.value() : fallback;
+    }
+
+    default <R> GutendexResult<R> map(Function<T, R> mapper) {
+        return switch (this) {
+            case Success<T> success -> new Success<>(mapper.apply(success.value()));
+            case Failure<T> failure -> new Failure<>(failure.kind(), failure.message());
+        };
+    }
+}
@@ -1,11 +1,38 @@
 package com.alura.literalura;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Service to interact with Gutendex API.
@@ -13,127 +40,382 @@ import java.util.Optional;
  */
 @Service
 public class GutendexService {
+
+    private static final Logger log = LoggerFactory.getLogger(GutendexService.class);
+
+    // Gutendex pages hold 32 books, so one ?ids= request can answer 32 ids
+    private static final int MAX_IDS_PER_REQUEST = 32;
+
+    // Catalog pages in id order; the default (popularity) order changes from day to day
+    static final String CATALOG_SORT = "sort=ascending";
     
-    private static final String GUTENDEX_BASE_URL = "https://gutendex.com/books/";
-    private final RestTemplate restTemplate;
+    @Value("${gutendex.base-url:https://gutendex.com/books/}")
+    private String baseUrl;
+
+    @Autowired
+    private GutendexResponseCache responseCache;
+
+    @Autowired
+    private GutendexHttpClient httpClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${gutendex.batch.window:PT0.01S}")
+    private Duration batchWindow;
+
     private final ObjectMapper objectMapper;
+    private GutendexIdBatcher idBatcher;
+
+    // Async lookups block on virtual threads, so thousands can be in flight cheaply
+    private final ExecutorService asyncExecutor;
     
     public GutendexService() {
-        this.restTemplate = new RestTemplate();
         this.objectMapper = new ObjectMapper();
+        this.asyncExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    @PostConstruct
+    public void init() {
+        idBatcher = new GutendexIdBatcher(this::getBooksByIds, batchWindow, MAX_IDS_PER_REQUEST);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        idBatcher.shutdown();
+        asyncExecutor.close();
     }
     
     /**
      * Searches for books by title.
      * @param title The title to search for
-     * @return List of books found
+     * @return Books found, or the reason the search failed
      */
-    public List<GutendexBook> searchBooksByTitle(String title) {
-        try {
-            String url = GUTENDEX_BASE_URL + "?search=" + encodeSearchTerm(title);
-            String response = restTemplate.getForObject(url, String.class);
-            
-            GutendexResponse gutendexResponse = objectMapper.readValue(response, GutendexResponse.class);
-            return gutendexResponse.getResults();
-            
-        } catch (Exception e) {
-            System.err.println("Error searching books by title: " + e.getMessage());
-            return List.of();
-        }
+    public GutendexResult<List<GutendexBook>> searchBooksByTitle(String title) {
+        return search(titleSearchUrl(title), "title");
     }
     
     /**
      * Searches for books by author name.
      * @param authorName The author name to search for
-     * @return List of books found
+     * @return Books found, or the reason the search failed
      */
-    public List<GutendexBook> searchBooksByAuthor(String authorName) {
-        try {
-            String url = GUTENDEX_BASE_URL + "?search=" + encodeSearchTerm(authorName);
-            String response = restTemplate.getForObject(url, String.class);
-            
-            GutendexResponse gutendexResponse = objectMapper.readValue(response, GutendexResponse.class);
-            return gutendexResponse.getResults();
-            
-        } catch (Exception e) {
-            System.err.println("Error searching books by author: " + e.getMessage());
-            return List.of();
-        }
+    public GutendexResult<List<GutendexBook>> searchBooksByAuthor(String authorName) {
+        return search(authorSearchUrl(authorName), "author");
     }
     
     /**
      * Searches for books by language.
      * @param language The language code (e.g., "en", "es", "pt")
-     * @return List of books found
+     * @return Books found, or the reason the search failed
      */
-    public List<GutendexBook> searchBooksByLanguage(String language) {
-        try {
-            String url = GUTENDEX_BASE_URL + "?languages=" + language.toLowerCase();
-            String response = restTemplate.getForObject(url, String.class);
-            
-            GutendexResponse gutendexResponse = objectMapper.readValue(response, GutendexResponse.class);
-            return gutendexResponse.getResults();
-            
-        } catch (Exception e) {
-            System.err.println("Error searching books by language: " + e.getMessage());
-            return List.of();
-        }
+    public GutendexResult<List<GutendexBook>> searchBooksByLanguage(String language) {
+        return search(languageSearchUrl(language), "language");
     }
     
     /**
      * Gets a specific book by its Gutendex ID.
      * @param id The book ID
-     * @return Optional containing the book if found
+     * @return The book if found (empty if Gutendex doesn't know it), or the reason the lookup failed
+     */
+    public GutendexResult<Optional<GutendexBook>> getBookById(Integer id) {
+        // Joins other lookups made at the same time into one request
+        return getBookByIdAsync(id).join();
+    }
+    
+    /**
+     * Async version of searchBooksByTitle.
+     * @param title The title to search for
+     * @return Future with the search result
+     */
+    public CompletableFuture<GutendexResult<List<GutendexBook>>> searchBooksByTitleAsync(String title) {
+        return CompletableFuture.supplyAsync(() -> searchBooksByTitle(title), asyncExecutor);
+    }
+
+    /**
+     * Async version of searchBooksByAuthor.
+     * @param authorName The author name to search for
+     * @return Future with the search result
+     */
+    public CompletableFuture<GutendexResult<List<GutendexBook>>> searchBooksByAuthorAsync(String authorName) {
+        return CompletableFuture.supplyAsync(() -> searchBooksByAuthor(authorName), asyncExecutor);
+    }
+
+    /**
+     * Async version of searchBooksByLanguage.
+     * @param language The language code
+     * @return Future with the search result
+     */
+    public CompletableFuture<GutendexResult<List<GutendexBook>>> searchBooksByLanguageAsync(String language) {
+        return CompletableFuture.supplyAsync(() -> searchBooksByLanguage(language), asyncExecutor);
+    }
+
+    /**
+     * Async version of getBookById.
+     * @param id The book ID
+     * @return Future with the lookup result
+     */
+    public CompletableFuture<GutendexResult<Optional<GutendexBook>>> getBookByIdAsync(Integer id) {
+        return idBatcher.lookup(id)
+                .thenApply(GutendexResult::success)
+                .exceptionally(e -> {
+                    GutendexException failure = asGutendexException(e);
+                    log.warn("Error getting book {} by ID: {}", id, failure.getMessage());
+                    return GutendexResult.failure(failure);
+                });
+    }
+
+    /**
+     * Gets many books by their Gutendex IDs, using one request per 32 ids.
+     * @param ids The book IDs
+     * @return Books found, keyed by ID (unknown IDs are missing)
+     * @throws GutendexException if a request fails
+     */
+    public Map<Integer, GutendexBook> getBooksByIds(Collection<Integer> ids) {
+        List<Integer> distinctIds = ids.stream().distinct().sorted().toList();
+        Map<Integer, GutendexBook> books = new HashMap<>();
+
+        for (int from = 0; from < distinctIds.size(); from += MAX_IDS_PER_REQUEST) {
+            List<Integer> chunk = distinctIds.subList(from, Math.min(from + MAX_IDS_PER_REQUEST, distinctIds.size()));
+            String url = baseUrl + "?ids=" + chunk.stream().map(String::valueOf).collect(Collectors.joining(","));
+
+            // A chunk fits on one page, but follow "next" in case the page size ever shrinks
+            while (url != null) {
+                GutendexResponse page = fetchPage(url);
+                page.getResults().forEach(book -> books.put(book.getId(), book));
+                url = page.getNext();
+            }
+        }
+        return books;
+    }
+
+    /**
+     * Fetches and parses a single Gutendex page.
+     * Unlike the search methods, failures are thrown instead of returned.
+     * @param url The full page URL (e.g. a "next" link)
+     * @return The parsed page
+     */
+    public GutendexResponse fetchPage(String url) {
+        return parse(url, httpClient.get(url));
+    }
+
+    /**
+     * Fetches a page and parses it while it downloads.
+     * Each book is passed to the consumer as soon as it has been read, instead
+     * of first buffering the whole body and building the full response.
+     * @param url The full page URL
+     * @param onBook Receives every book of the page, in order
+     * @return Pagination info of the page
+     */
+    public PageInfo streamPage(String url, Consumer<GutendexBook> onBook) {
+        // Includes the download, which overlaps with parsing
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try (InputStream body = httpClient.open(url)) {
+            return readPage(body, onBook);
+        } catch (IOException e) {
+            throw new GutendexException(GutendexException.Kind.INVALID_RESPONSE, "Error reading page " + url, e);
+        } finally {
+            sample.stop(parseTimer("stream"));
+        }
+    }
+
+    /**
+     * Reads a Gutendex page token by token.
+     * Only one book at a time is held in memory.
+     * @param in The response body
+     * @param onBook Receives every book of the page, in order
+     * @return Pagination info of the page
      */
-    public Optional<GutendexBook> getBookById(Integer id) {
+    public PageInfo readPage(InputStream in, Consumer<GutendexBook> onBook) throws IOException {
+        Integer count = null;
+        String next = null;
+        int books = 0;
+
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                switch (field) {
+                    case "count" -> count = parser.getIntValue();
+                    case "next" -> next = parser.getText();
+                    case "results" -> {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            onBook.accept(objectMapper.readValue(parser, GutendexBook.class));
+                            books++;
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        return new PageInfo(count, next, books);
+    }
+
+    private GutendexResult<List<GutendexBook>> search(String url, String searchType) {
         try {
-            String url = GUTENDEX_BASE_URL + "?ids=" + id;
-            String response = restTemplate.getForObject(url, String.class);
-            
-            GutendexResponse gutendexResponse = objectMapper.readValue(response, GutendexResponse.class);
-            List<GutendexBook> books = gutendexResponse.getResults();
-            
-            return books.isEmpty() ? Optional.empty() : Optional.of(books.get(0));
-            
-        } catch (Exception e) {
-            System.err.println("Error getting book by ID: " + e.getMessage());
-            return Optional.empty();
+            return GutendexResult.success(fetchCachedPage(url).getResults());
+        } catch (GutendexException e) {
+            log.warn("Error searching books by {}: {}", searchType, e.getMessage());
+            return GutendexResult.failure(e);
         }
     }
-    
+
+    private static GutendexException asGutendexException(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof GutendexException gutendexException ? gutendexException
+                : new GutendexException(GutendexException.Kind.NETWORK, cause.getMessage(), cause);
+    }
+
+    /**
+     * Same as fetchPage, but answers repeated requests from the response cache.
+     * Used for interactive lookups; harvests bypass the cache.
+     * @param url The full page URL
+     * @return The parsed page
+     */
+    public GutendexResponse fetchCachedPage(String url) {
+        return parse(url, responseCache.get(url, () -> httpClient.get(url)));
+    }
+
+    private GutendexResponse parse(String url, String body) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return objectMapper.readValue(body, GutendexResponse.class);
+        } catch (IOException e) {
+            throw new GutendexException(GutendexException.Kind.INVALID_RESPONSE, "Error parsing page " + url, e);
+        } finally {
+            sample.stop(parseTimer("page"));
+        }
+    }
+
+    private Timer parseTimer(String mode) {
+        return Timer.builder("gutendex.parse")
+                .description("Time to parse a Gutendex page; \"stream\" also includes its download")
+                .tag("mode", mode)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Builds the URL of a numbered page of the full catalog, oldest books (lowest ids) first.
+     * New books only ever land on the last pages, so a page holds the same books from run to run.
+     * @param page The page number, starting at 1
+     * @return Page URL
+     */
+    public String catalogPageUrl(int page) {
+        return baseUrl + "?" + CATALOG_SORT + "&page=" + page;
+    }
+
+    /**
+     * @param title The title to search for
+     * @return URL of the first page of a title search
+     */
+    public String titleSearchUrl(String title) {
+        return baseUrl + "?search=" + encodeSearchTerm(title);
+    }
+
+    /**
+     * @param authorName The author name to search for
+     * @return URL of the first page of an author search
+     */
+    public String authorSearchUrl(String authorName) {
+        return baseUrl + "?search=" + encodeSearchTerm(authorName);
+    }
+
+    /**
+     * @param language The language code
+     * @return URL of the first page of books in that language
+     */
+    public String languageSearchUrl(String language) {
+        return baseUrl + "?languages=" + language.trim().toLowerCase();
+    }
+
     /**
      * Converts a GutendexBook to our local Book entity.
+     * Authors, languages and subjects are linked by BookImportService.
      * @param gutendexBook The API book
      * @return Local Book entity
      */
     public Book convertToBook(GutendexBook gutendexBook) {
         Book book = new Book(gutendexBook.getTitle());
+        book.setGutendexId(gutendexBook.getId());
         
-        // Set language (use first language if available)
-        if (gutendexBook.getLanguages() != null && !gutendexBook.getLanguages().isEmpty()) {
-            book.setLanguage(gutendexBook.getLanguages().get(0));
-        }
-        
-        // Set download count as a proxy for popularity
-        book.setPublicationYear(gutendexBook.getDownload_count());
+        // Gutendex has no publication year; the download count measures popularity
+        book.setDownloadCount(gutendexBook.getDownload_count());
         
+        book.setContentFingerprint(fingerprint(gutendexBook));
         return book;
     }
+
+    /**
+     * Hashes the parts of a Gutendex book that are stored in the library.
+     * Two versions of a book with the same fingerprint would be saved the same way.
+     * The download count changes every day, so it is left out.
+     * @param gutendexBook The API book
+     * @return 64-bit fingerprint
+     */
+    public long fingerprint(GutendexBook gutendexBook) {
+        List<String> parts = new ArrayList<>();
+        parts.add(String.valueOf(gutendexBook.getTitle()));
+        for (Author author : convertToAuthors(gutendexBook)) {
+            parts.add(author.getName() + "|" + author.getBirthYear() + "|" + author.getDeathYear());
+        }
+        parts.add(String.valueOf(gutendexBook.getLanguages()));
+        parts.add(String.valueOf(gutendexBook.getSubjects()));
+        String content = String.join("\u0000", parts);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
     
     /**
-     * Converts a GutendexBook author to our local Author entity.
+     * Converts the first author of a GutendexBook to our local Author entity.
      * @param gutendexBook The API book containing author info
      * @return Local Author entity
      */
     public Author convertToAuthor(GutendexBook gutendexBook) {
-        if (gutendexBook.getAuthors() == null || gutendexBook.getAuthors().isEmpty()) {
-            return new Author("Unknown Author");
+        return convertToAuthors(gutendexBook).get(0);
+    }
+
+    /**
+     * Converts every author of a GutendexBook to our local Author entities.
+     * @param gutendexBook The API book containing author info
+     * @return Local Author entities in Gutendex order; "Unknown Author" if the book lists none
+     */
+    public List<Author> convertToAuthors(GutendexBook gutendexBook) {
+        List<Author> authors = new ArrayList<>();
+        if (gutendexBook.getAuthors() != null) {
+            for (GutendexPerson person : gutendexBook.getAuthors()) {
+                if (person == null || person.getName() == null || person.getName().isBlank()) {
+                    continue;
+                }
+                Author author = new Author(person.getName());
+                author.setBirthYear(person.getBirth_year());
+                author.setDeathYear(person.getDeath_year());
+                authors.add(author);
+            }
         }
-        
-        String authorName = gutendexBook.getAuthors().get(0);
-        return new Author(authorName);
+        if (authors.isEmpty()) {
+            authors.add(new Author("Unknown Author"));
+        }
+        return authors;
     }
     
+    /**
+     * Pagination info of a streamed page.
+     * @param count Total number of books matching the request
+     * @param next URL of the next page, or null on the last page
+     * @param books Number of books on this page
+     */
+    public record PageInfo(Integer count, String next, int books) {}
+
     /**
      * Encodes search terms for URL compatibility.
      * @param term The search term
@@ -0,0 +1,207 @@
+package com.alura.literalura;
+
+import jakarta.persistence.*;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * A background import of Gutendex books, saved so its progress can be
+ * checked and an unfinished job can continue after a restart.
+ */
+@Entity
+@Table(name = "import_jobs")
+public class ImportJob {
+
+    public enum Type {
+        // Gutendex book ids, comma separated
+        IDS,
+        // Every page of a Gutendex search
+        TITLE_SEARCH,
+        AUTHOR_SEARCH,
+        LANGUAGE_SEARCH
+    }
+
+    // Longest request the column holds (about 1,500 ids)
+    public static final int MAX_REQUEST_LENGTH = 10000;
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED
+    }
+
+    // Jobs are created one at a time and their ids are shown to users, so no gaps
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "import_job_seq")
+    @SequenceGenerator(name = "import_job_seq", sequenceName = "import_jobs_seq", allocationSize = 1)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Type type;
+
+    // The ids or the search text
+    @Column(nullable = false, length = MAX_REQUEST_LENGTH)
+    private String request;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status = Status.QUEUED;
+
+    // Books to import: requested ids, or the search result count once known
+    private int total;
+
+    // Ids looked up, or books read from search pages
+    private int processed;
+
+    private int booksSaved;
+
+    private int duplicatesSkipped;
+
+    // Ids that failed or weren't found, and pages that failed
+    private int failures;
+
+    // Next search page to fetch, so a restarted job continues where it stopped
+    @Column(length = 2000)
+    private String resumeUrl;
+
+    @Column(length = 2000)
+    private String error;
+
+    private Instant createdAt;
+
+    private Instant startedAt;
+
+    private Instant finishedAt;
+
+    // Default constructor
+    public ImportJob() {}
+
+    public ImportJob(Type type, String request) {
+        this.type = type;
+        this.request = request;
+        this.createdAt = Instant.now();
+    }
+
+    /**
+     * @return Books saved per second since the job started (0 before it starts)
+     */
+    public double getBooksPerSecond() {
+        if (startedAt == null) {
+            return 0;
+        }
+        Duration elapsed = Duration.between(startedAt, finishedAt != null ? finishedAt : Instant.now());
+        return elapsed.isZero() ? 0 : booksSaved * 1000.0 / elapsed.toMillis();
+    }
+
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getRequest() {
+        return request;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    public int getProcessed() {
+        return processed;
+    }
+
+    public void setProcessed(int processed) {
+        this.processed = processed;
+    }
+
+    public int getBooksSaved() {
+        return booksSaved;
+    }
+
+    public void setBooksSaved(int booksSaved) {
+        this.booksSaved = booksSaved;
+    }
+
+    public int getDuplicatesSkipped() {
+        return duplicatesSkipped;
+    }
+
+    public void setDuplicatesSkipped(int duplicatesSkipped) {
+        this.duplicatesSkipped = duplicatesSkipped;
+    }
+
+    public int getFailures() {
+        return failures;
+    }
+
+    public void setFailures(int failures) {
+        this.failures = failures;
+    }
+
+    public String getResumeUrl() {
+        return resumeUrl;
+    }
+
+    public void setResumeUrl(String resumeUrl) {
+        this.resumeUrl = resumeUrl;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(Instant startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(Instant finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "Job #" + id + " " + type + " [" + status + "] " +
+               processed + "/" + total + " processed, " + booksSaved + " saved, " +
+               duplicatesSkipped + " duplicates, " + failures + " failed" +
+               (error != null ? " (" + error + ")" : "");
+    }
+}
@@ -0,0 +1,21 @@
+package com.alura.literalura;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Handles database operations for import jobs.
+ * Spring Data JPA automatically creates the implementation.
+ */
+@Repository
+public interface ImportJobRepository extends JpaRepository<ImportJob, Long> {
+
+    // Jobs in the given states, oldest first (used to resume unfinished jobs)
+    List<ImportJob> findByStatusInOrderByIdAsc(List<ImportJob.Status> statuses);
+
+    // Most recent jobs first
+    List<ImportJob> findByOrderByIdDesc(Limit limit);
+}
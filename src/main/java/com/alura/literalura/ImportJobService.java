@@ -0,0 +1,275 @@
+package com.alura.literalura;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.hibernate.exception.ConstraintViolationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Runs Gutendex imports in the background.
+ * Submitting a job only saves it and queues it, so callers never wait for
+ * Gutendex. A fixed number of workers (literalura.import.parallelism) run
+ * the queued jobs. Each chunk of books is saved in the same transaction as
+ * the job's progress, so a job interrupted by a restart continues after
+ * the last saved chunk instead of starting over.
+ */
+@Service
+public class ImportJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(ImportJobService.class);
+
+    // Ids looked up and saved together (four Gutendex requests)
+    private static final int ID_CHUNK_SIZE = 128;
+    // A chunk is tried again when another job saved some of the same books first
+    private static final int CHUNK_ATTEMPTS = 3;
+
+    @Autowired
+    private ImportJobRepository importJobRepository;
+
+    @Autowired
+    private GutendexService gutendexService;
+
+    @Autowired
+    private BookImportService bookImportService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${literalura.import.parallelism:2}")
+    private int parallelism;
+
+    private ExecutorService workers;
+
+    @PostConstruct
+    public void init() {
+        // Workers mostly wait on Gutendex and the database, so virtual threads are enough
+        workers = Executors.newFixedThreadPool(parallelism, Thread.ofVirtual().name("import-job-", 0).factory());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Interrupted jobs stay RUNNING and are picked up again on the next start
+        workers.shutdownNow();
+    }
+
+    /**
+     * Queues jobs left unfinished by the previous run.
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    public void resumeUnfinishedJobs() {
+        importJobRepository.findByStatusInOrderByIdAsc(List.of(ImportJob.Status.QUEUED, ImportJob.Status.RUNNING))
+                .forEach(job -> workers.submit(() -> run(job.getId())));
+    }
+
+    /**
+     * Queues an import of books by Gutendex id.
+     * @param ids The book ids
+     * @return The saved job
+     * @throws IllegalArgumentException if there are too many ids for one job
+     */
+    public ImportJob submitIds(Collection<Integer> ids) {
+        String request = ids.stream().distinct().sorted().map(String::valueOf).collect(Collectors.joining(","));
+        checkLength(request, "Too many ids for one import");
+        return submit(new ImportJob(ImportJob.Type.IDS, request));
+    }
+
+    /**
+     * Queues an import of every book returned by a Gutendex search.
+     * @param type TITLE_SEARCH, AUTHOR_SEARCH or LANGUAGE_SEARCH
+     * @param query The search text or language code
+     * @return The saved job
+     * @throws IllegalArgumentException if the type is IDS or the query is too long
+     */
+    public ImportJob submitSearch(ImportJob.Type type, String query) {
+        if (type == ImportJob.Type.IDS) {
+            throw new IllegalArgumentException("Use submitIds for id imports");
+        }
+        String request = query.trim();
+        checkLength(request, "Search text too long");
+        return submit(new ImportJob(type, request));
+    }
+
+    private static void checkLength(String request, String message) {
+        if (request.length() > ImportJob.MAX_REQUEST_LENGTH) {
+            throw new IllegalArgumentException(message + " (" + request.length() + " characters, at most "
+                    + ImportJob.MAX_REQUEST_LENGTH + ")");
+        }
+    }
+
+    /**
+     * @param id The job id
+     * @return The job, with its latest saved progress
+     */
+    public Optional<ImportJob> getJob(Long id) {
+        return importJobRepository.findById(id);
+    }
+
+    /**
+     * @param limit Maximum number of jobs
+     * @return The most recent jobs, newest first
+     */
+    public List<ImportJob> recentJobs(int limit) {
+        return importJobRepository.findByOrderByIdDesc(Limit.of(limit));
+    }
+
+    private ImportJob submit(ImportJob job) {
+        ImportJob saved = importJobRepository.save(job);
+        workers.submit(() -> run(saved.getId()));
+        return saved;
+    }
+
+    private void run(Long jobId) {
+        ImportJob job = importJobRepository.findById(jobId).orElse(null);
+        if (job == null || job.isFinished()) {
+            return;
+        }
+
+        job.setStatus(ImportJob.Status.RUNNING);
+        if (job.getStartedAt() == null) {
+            job.setStartedAt(Instant.now());
+        }
+        importJobRepository.save(job);
+
+        try {
+            if (job.getType() == ImportJob.Type.IDS) {
+                importIds(job);
+            } else {
+                importSearch(job);
+            }
+        } catch (GutendexException e) {
+            if (e.getKind() != GutendexException.Kind.INTERRUPTED) {
+                fail(jobId, e, 1);
+            }
+            // Interrupted means shutting down; the job resumes on the next start
+            return;
+        } catch (RuntimeException e) {
+            fail(jobId, e, 0);
+            return;
+        }
+        job.setStatus(ImportJob.Status.DONE);
+        job.setFinishedAt(Instant.now());
+        importJobRepository.save(job);
+    }
+
+    /**
+     * Marks a job as failed. The saved copy is reloaded, so progress that
+     * was not committed with its chunk is not recorded.
+     */
+    private void fail(Long jobId, RuntimeException e, int failedPages) {
+        log.warn("Import job #{} failed: {}", jobId, e.getMessage());
+        importJobRepository.findById(jobId).ifPresent(job -> {
+            job.setStatus(ImportJob.Status.FAILED);
+            job.setFailures(job.getFailures() + failedPages);
+            job.setError(e.getMessage());
+            job.setFinishedAt(Instant.now());
+            importJobRepository.save(job);
+        });
+    }
+
+    private void importIds(ImportJob job) {
+        List<Integer> ids = Arrays.stream(job.getRequest().split(","))
+                .map(String::trim)
+                .filter(id -> !id.isEmpty())
+                .map(Integer::valueOf)
+                .toList();
+        job.setTotal(ids.size());
+
+        for (int from = job.getProcessed(); from < ids.size(); from += ID_CHUNK_SIZE) {
+            List<Integer> chunk = ids.subList(from, Math.min(from + ID_CHUNK_SIZE, ids.size()));
+            List<GutendexBook> books;
+            try {
+                books = new ArrayList<>(gutendexService.getBooksByIds(chunk).values());
+            } catch (GutendexException e) {
+                if (e.getKind() == GutendexException.Kind.INTERRUPTED) {
+                    throw e;
+                }
+                // Count the chunk as failed and carry on with the rest
+                job.setError(e.getMessage());
+                books = List.of();
+            }
+            saveChunk(job, books, chunk.size(), chunk.size() - books.size(), null);
+        }
+    }
+
+    private void importSearch(ImportJob job) {
+        if (job.getProcessed() > 0 && job.getResumeUrl() == null) {
+            // The last page was already saved
+            return;
+        }
+        String url = job.getResumeUrl() != null ? job.getResumeUrl() : firstPageUrl(job);
+        while (url != null) {
+            GutendexResponse page = gutendexService.fetchPage(url);
+            if (page.getCount() != null) {
+                job.setTotal(page.getCount());
+            }
+            List<GutendexBook> books = page.getResults() != null ? page.getResults() : List.of();
+            saveChunk(job, books, books.size(), 0, page.getNext());
+            url = page.getNext();
+        }
+    }
+
+    private String firstPageUrl(ImportJob job) {
+        return switch (job.getType()) {
+            case TITLE_SEARCH -> gutendexService.titleSearchUrl(job.getRequest());
+            case AUTHOR_SEARCH -> gutendexService.authorSearchUrl(job.getRequest());
+            case LANGUAGE_SEARCH -> gutendexService.languageSearchUrl(job.getRequest());
+            case IDS -> throw new IllegalArgumentException("Id jobs have no search URL");
+        };
+    }
+
+    /**
+     * Saves a chunk of books and the job's new progress in one transaction.
+     * Two jobs importing the same book can both find it missing; the second
+     * insert then breaks the unique gutendex_id and the chunk is rolled back.
+     * It is tried again, and the new check skips the books the other job saved.
+     */
+    private void saveChunk(ImportJob job, List<GutendexBook> books, int processed, int failed, String resumeUrl) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    BookImportService.ImportResult result = bookImportService.importBooks(books);
+                    job.setProcessed(job.getProcessed() + processed);
+                    job.setBooksSaved(job.getBooksSaved() + result.booksSaved());
+                    job.setDuplicatesSkipped(job.getDuplicatesSkipped() + result.duplicatesSkipped());
+                    job.setFailures(job.getFailures() + failed);
+                    job.setResumeUrl(resumeUrl);
+                    importJobRepository.save(job);
+                });
+                return;
+            } catch (RuntimeException e) {
+                // Thrown by importBooks' flush, before the job's progress was changed. Hibernate wraps
+                // the violation in a PersistenceException, which isn't translated outside repositories.
+                if (attempt == CHUNK_ATTEMPTS || !isConstraintViolation(e)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static boolean isConstraintViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,19 @@
+package com.alura.literalura;
+
+import java.time.Instant;
+
+/**
+ * JSON view of an import job for the REST API.
+ */
+public record ImportJobView(Long id, ImportJob.Type type, String request, ImportJob.Status status,
+                            int total, int processed, int booksSaved, int duplicatesSkipped, int failures,
+                            double booksPerSecond, String error,
+                            Instant createdAt, Instant startedAt, Instant finishedAt) {
+
+    public static ImportJobView of(ImportJob job) {
+        return new ImportJobView(job.getId(), job.getType(), job.getRequest(), job.getStatus(),
+                job.getTotal(), job.getProcessed(), job.getBooksSaved(), job.getDuplicatesSkipped(), job.getFailures(),
+                job.getBooksPerSecond(), job.getError(),
+                job.getCreatedAt(), job.getStartedAt(), job.getFinishedAt());
+    }
+}
@@ -0,0 +1,76 @@
+package com.alura.literalura;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Ids of rows looked up by a natural key (normalized author name, language
+ * code, subject heading), kept in memory once known.
+ * Rows upserted in a transaction are only seen by that transaction until it
+ * commits, so other threads never use an id whose row could still be rolled
+ * back; a rollback forgets them.
+ */
+final class KnownIds {
+
+    private final ConcurrentMap<String, Long> committed = new ConcurrentHashMap<>();
+
+    /**
+     * @param key The natural key
+     * @return Id of the row, if committed or upserted in the current transaction; null if unknown
+     */
+    Long get(String key) {
+        Long id = committed.get(key);
+        if (id == null) {
+            Map<String, Long> pending = pending();
+            id = pending != null ? pending.get(key) : null;
+        }
+        return id;
+    }
+
+    /**
+     * Remembers ids upserted in the current transaction, for everyone once it commits.
+     * Without a transaction the rows are already committed.
+     * @param ids Id per natural key
+     */
+    void putAll(Map<String, Long> ids) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            committed.putAll(ids);
+            return;
+        }
+        Map<String, Long> pending = pending();
+        if (pending == null) {
+            Map<String, Long> transactionIds = new HashMap<>();
+            pending = transactionIds;
+            TransactionSynchronizationManager.bindResource(this, transactionIds);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    committed.putAll(transactionIds);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(KnownIds.this);
+                }
+            });
+        }
+        pending.putAll(ids);
+    }
+
+    /**
+     * Forgets all known ids, e.g. after rows were deleted with plain SQL.
+     */
+    void clear() {
+        committed.clear();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Long> pending() {
+        return (Map<String, Long>) TransactionSynchronizationManager.getResource(this);
+    }
+}
@@ -0,0 +1,54 @@
+package com.alura.literalura;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+/**
+ * A language code used by books ("en", "fr").
+ * Each code is stored once and books refer to it by id.
+ */
+@Entity
+@Cacheable
+@org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(name = "languages")
+public class Language {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "language_seq")
+    @SequenceGenerator(name = "language_seq", sequenceName = "languages_seq", allocationSize = 50)
+    private Long id;
+
+    // Two-letter ISO 639 code where there is one (see LanguageCodes)
+    @Column(nullable = false, unique = true)
+    private String code;
+
+    // Default constructor
+    public Language() {}
+
+    // Constructor with code
+    public Language(String code) {
+        this.code = code;
+    }
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public void setCode(String code) {
+        this.code = code;
+    }
+
+    @Override
+    public String toString() {
+        return code;
+    }
+}
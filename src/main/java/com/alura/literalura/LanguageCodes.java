@@ -0,0 +1,66 @@
+package com.alura.literalura;
+
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.regex.Pattern;
+
+/**
+ * Turns the ways people write a language ("English", "ENGLISH", "inglês",
+ * "eng") into its two-letter ISO 639 code ("en"), the codes Gutendex uses.
+ * Names are recognized in English, Portuguese, Spanish and in the language
+ * itself, ignoring case and accents. Anything else (codes Java doesn't
+ * know, such as "grc") is kept, trimmed and lowercase.
+ */
+public final class LanguageCodes {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Locale[] NAME_LOCALES = {Locale.ENGLISH, Locale.of("pt"), Locale.of("es")};
+
+    // Folded name or code -> two-letter code
+    private static final Map<String, String> CODES = buildCodes();
+
+    private LanguageCodes() {}
+
+    /**
+     * @param text A language code or name
+     * @return The ISO 639 code, or the text trimmed and lowercase if it isn't a known language;
+     *         null if blank
+     */
+    public static String normalize(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        String code = CODES.get(fold(text));
+        return code != null ? code : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Map<String, String> buildCodes() {
+        Map<String, String> codes = new HashMap<>();
+        String[] languages = Locale.getISOLanguages();
+        // Two-letter codes first, so no name or three-letter code can take their place
+        for (String code : languages) {
+            codes.put(code, code);
+        }
+        for (String code : languages) {
+            Locale language = Locale.of(code);
+            try {
+                codes.putIfAbsent(language.getISO3Language(), code);
+            } catch (MissingResourceException e) {
+                // No three-letter code for this language
+            }
+            for (Locale names : NAME_LOCALES) {
+                codes.putIfAbsent(fold(language.getDisplayLanguage(names)), code);
+            }
+            codes.putIfAbsent(fold(language.getDisplayLanguage(language)), code);
+        }
+        return codes;
+    }
+
+    private static String fold(String text) {
+        return DIACRITICS.matcher(Normalizer.normalize(text.trim(), Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+    }
+}
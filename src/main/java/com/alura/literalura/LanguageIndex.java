@@ -0,0 +1,137 @@
+package com.alura.literalura;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory index of the books in each language, as one bitmap of book ids
+ * per language code. Filtering by language, or by several languages at once
+ * (books in both English and French), is an AND of bitmaps and never
+ * touches the database. Book ids come from a sequence, so they are dense
+ * enough for java.util.BitSet.
+ *
+ * The index is built when the application starts and kept up to date by
+ * BookLanguageListener whenever a book is saved or deleted.
+ */
+@Component
+public class LanguageIndex {
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    private final Map<String, BitSet> booksByLanguage = new HashMap<>();
+
+    /**
+     * Loads every book's languages when the application starts.
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    public synchronized void rebuild() {
+        booksByLanguage.clear();
+        for (BookLanguage link : bookRepository.findAllLanguageLinks()) {
+            booksByLanguage.computeIfAbsent(link.code(), code -> new BitSet()).set(bit(link.bookId()));
+        }
+    }
+
+    /**
+     * Sets the languages of a saved book, replacing those it had.
+     * @param bookId Id of the book
+     * @param codes Its language codes
+     */
+    public synchronized void put(Long bookId, Collection<String> codes) {
+        removeLocked(bookId);
+        for (String code : codes) {
+            booksByLanguage.computeIfAbsent(code, key -> new BitSet()).set(bit(bookId));
+        }
+    }
+
+    /**
+     * Takes a deleted book out of the index.
+     * @param bookId Id of the deleted book
+     */
+    public synchronized void remove(Long bookId) {
+        removeLocked(bookId);
+    }
+
+    /**
+     * @param languages Language codes or names ("en", "French")
+     * @return Ids of the books in every one of the languages, lowest first
+     */
+    public synchronized BitSet books(Collection<String> languages) {
+        Set<String> codes = new LinkedHashSet<>();
+        for (String language : languages) {
+            String code = DictionaryResolver.normalizeLanguage(language);
+            if (code != null) {
+                codes.add(code);
+            }
+        }
+        if (codes.isEmpty()) {
+            return new BitSet();
+        }
+
+        // Start from the smallest bitmap, so the result only shrinks from there
+        List<BitSet> bitmaps = new ArrayList<>(codes.size());
+        for (String code : codes) {
+            BitSet bitmap = booksByLanguage.get(code);
+            if (bitmap == null) {
+                return new BitSet();
+            }
+            bitmaps.add(bitmap);
+        }
+        bitmaps.sort(Comparator.comparingInt(BitSet::cardinality));
+        BitSet result = (BitSet) bitmaps.get(0).clone();
+        for (int i = 1; i < bitmaps.size() && !result.isEmpty(); i++) {
+            result.and(bitmaps.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * @return Books per language code, counting every language of a book, most books first
+     */
+    public synchronized Map<String, Integer> counts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        booksByLanguage.entrySet().stream()
+                .sorted(Comparator.<Map.Entry<String, BitSet>>comparingInt(entry -> entry.getValue().cardinality())
+                        .reversed().thenComparing(Map.Entry::getKey))
+                .forEach(entry -> counts.put(entry.getKey(), entry.getValue().cardinality()));
+        return counts;
+    }
+
+    /**
+     * @return Number of languages indexed
+     */
+    public synchronized int size() {
+        return booksByLanguage.size();
+    }
+
+    // A book has few languages, but only the bitmaps know which; there are few bitmaps
+    private void removeLocked(Long bookId) {
+        int bit = bit(bookId);
+        booksByLanguage.values().removeIf(bitmap -> {
+            bitmap.clear(bit);
+            return bitmap.isEmpty();
+        });
+    }
+
+    private static int bit(Long bookId) {
+        return Math.toIntExact(bookId);
+    }
+
+    /**
+     * One language of one book.
+     */
+    public record BookLanguage(Long bookId, String code) {}
+}
@@ -0,0 +1,179 @@
+package com.alura.literalura;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Brings stored languages in line with LanguageCodes when the application
+ * starts, before the in-memory indexes are built. Turning "English" into "en"
+ * needs Java, so unlike the other data fixes this one isn't a db/ script.
+ *
+ * - Books used to keep their language as free text in books.language. It
+ *   is copied to language_id (a reference to the languages table) and the
+ *   books are linked in book_languages if they weren't yet. The old column is
+ *   only dropped when literalura.migration.drop-language-column is set and
+ *   every non-blank value in it was mapped; otherwise it stays as a backup.
+ * - Language rows whose code isn't normalized ("english", "ENG") are merged
+ *   into the row of their ISO code, moving their books along.
+ *
+ * Both steps find nothing to do once they have run (the first one only
+ * checks what is left in books.language while the column is kept).
+ */
+@Component
+public class LanguageMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(LanguageMigration.class);
+
+    private static final String HAS_TEXT_COLUMN =
+            "SELECT EXISTS (SELECT 1 FROM information_schema.columns " +
+            "WHERE table_schema = current_schema() AND table_name = 'books' AND column_name = 'language')";
+
+    // Blank text (no non-space character) names no language, like in LanguageCodes.normalize; it is not moved
+    private static final String HAS_LANGUAGE_TEXT = "language ~ '\\S'";
+
+    private static final String SELECT_TEXT_VALUES =
+            "SELECT DISTINCT language FROM books WHERE " + HAS_LANGUAGE_TEXT + " AND language_id IS NULL";
+
+    private static final String SET_LANGUAGE_IDS =
+            "UPDATE books b SET language_id = m.id " +
+            "FROM unnest(?::text[], ?::bigint[]) AS m(value, id) " +
+            "WHERE b.language = m.value AND b.language_id IS NULL";
+
+    private static final String LINK_UNLINKED_BOOKS =
+            "INSERT INTO book_languages (book_id, language_id) " +
+            "SELECT b.id, b.language_id FROM books b " +
+            "WHERE b.language_id IS NOT NULL " +
+            "AND NOT EXISTS (SELECT 1 FROM book_languages bl WHERE bl.book_id = b.id)";
+
+    private static final String COUNT_UNMAPPED_BOOKS =
+            "SELECT count(*) FROM books WHERE " + HAS_LANGUAGE_TEXT + " AND language_id IS NULL";
+
+    private static final String DROP_TEXT_COLUMN = "ALTER TABLE books DROP COLUMN language";
+
+    private static final String MOVE_BOOKS =
+            "UPDATE books b SET language_id = m.new_id " +
+            "FROM unnest(?::bigint[], ?::bigint[]) AS m(old_id, new_id) " +
+            "WHERE b.language_id = m.old_id";
+
+    private static final String MOVE_LINKS =
+            "INSERT INTO book_languages (book_id, language_id) " +
+            "SELECT bl.book_id, m.new_id FROM book_languages bl " +
+            "JOIN unnest(?::bigint[], ?::bigint[]) AS m(old_id, new_id) ON bl.language_id = m.old_id " +
+            "ON CONFLICT DO NOTHING";
+
+    private static final String DELETE_OLD_LINKS = "DELETE FROM book_languages WHERE language_id = ANY(?::bigint[])";
+    private static final String DELETE_OLD_LANGUAGES = "DELETE FROM languages WHERE id = ANY(?::bigint[])";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private DictionaryResolver dictionaryResolver;
+
+    @Value("${literalura.migration.drop-language-column:false}")
+    private boolean dropTextColumn;
+
+    /**
+     * Runs both steps; first of the startup listeners, so the indexes see the result.
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void migrate() {
+        if (Boolean.TRUE.equals(jdbcTemplate.queryForObject(HAS_TEXT_COLUMN, Boolean.class))) {
+            moveTextColumn();
+        }
+        mergeLanguageCodes();
+    }
+
+    private void moveTextColumn() {
+        List<String> values = jdbcTemplate.queryForList(SELECT_TEXT_VALUES, String.class);
+        Map<String, Long> ids = dictionaryResolver.languageIds(values);
+        List<String> knownValues = new ArrayList<>();
+        List<Long> knownIds = new ArrayList<>();
+        for (String value : values) {
+            Long id = ids.get(DictionaryResolver.normalizeLanguage(value));
+            if (id != null) {
+                knownValues.add(value);
+                knownIds.add(id);
+            }
+        }
+
+        List<String> unknownValues = values.stream().filter(value -> !knownValues.contains(value)).toList();
+
+        Integer moved = transactionTemplate.execute(status -> {
+            int updated = jdbcTemplate.update(SET_LANGUAGE_IDS, ps -> {
+                ps.setArray(1, ps.getConnection().createArrayOf("text", knownValues.toArray()));
+                ps.setArray(2, ps.getConnection().createArrayOf("int8", knownIds.toArray()));
+            });
+            jdbcTemplate.update(LINK_UNLINKED_BOOKS);
+            return updated;
+        });
+        if (moved > 0) {
+            log.info("Moved the language of {} books to the languages table", moved);
+        }
+
+        Long unmapped = jdbcTemplate.queryForObject(COUNT_UNMAPPED_BOOKS, Long.class);
+        if (unmapped != null && unmapped > 0) {
+            log.warn("Keeping books.language: {} books have a language that isn't known: {}", unmapped, unknownValues);
+        } else if (!dropTextColumn) {
+            log.info("Every books.language value was moved; set literalura.migration.drop-language-column=true to drop the column");
+        } else {
+            // Checked again in the same transaction, in case a value was written since
+            transactionTemplate.executeWithoutResult(status -> {
+                if (jdbcTemplate.queryForObject(COUNT_UNMAPPED_BOOKS, Long.class) == 0) {
+                    jdbcTemplate.execute(DROP_TEXT_COLUMN);
+                    log.info("Dropped books.language");
+                }
+            });
+        }
+    }
+
+    private void mergeLanguageCodes() {
+        Map<Long, String> renamed = new HashMap<>();
+        jdbcTemplate.query("SELECT id, code FROM languages", rs -> {
+            String code = rs.getString("code");
+            String normalized = DictionaryResolver.normalizeLanguage(code);
+            if (normalized != null && !normalized.equals(code)) {
+                renamed.put(rs.getLong("id"), normalized);
+            }
+        });
+        if (renamed.isEmpty()) {
+            return;
+        }
+
+        // The rows of the ISO codes are added first if missing (committed right away, outside a transaction)
+        Map<String, Long> targets = dictionaryResolver.languageIds(renamed.values());
+        List<Long> oldIds = new ArrayList<>(renamed.keySet());
+        List<Long> newIds = oldIds.stream().map(id -> targets.get(renamed.get(id))).toList();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            for (String sql : List.of(MOVE_BOOKS, MOVE_LINKS)) {
+                jdbcTemplate.update(sql, ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("int8", oldIds.toArray()));
+                    ps.setArray(2, ps.getConnection().createArrayOf("int8", newIds.toArray()));
+                });
+            }
+            for (String sql : List.of(DELETE_OLD_LINKS, DELETE_OLD_LANGUAGES)) {
+                jdbcTemplate.update(sql, ps -> ps.setArray(1, ps.getConnection().createArrayOf("int8", oldIds.toArray())));
+            }
+        });
+        log.info("Merged {} language names into their ISO codes", oldIds.size());
+    }
+}
@@ -0,0 +1,744 @@
+package com.alura.literalura;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Backs up the library to a compact binary file, and loads such a file back.
+ *
+ * The file starts with "LLIB" and a format version byte, followed by records
+ * that each start with a type byte, and ends with an END byte:
+ * - LANGUAGE: code. Adds the next entry to the language dictionary; it is
+ *   written the first time a book uses the language.
+ * - SUBJECT: heading. Adds the next entry to the subject dictionary, the
+ *   same way.
+ * - AUTHOR: name, birth year, death year. Authors are numbered in file order.
+ * - BOOK: title, language (dictionary entry), publication year, download
+ *   count, Gutendex id, content fingerprint, then every author (numbers, the
+ *   first one being the book's main author), language and subject of the
+ *   book, each as a count followed by that many numbers or dictionary entries.
+ *   Versions 1 to 3 also have the main author (number) before the Gutendex
+ *   id. Version 1 files have no download count, and versions 1 and 2 only
+ *   the one author and language.
+ * Whole numbers are varints (small ones take one byte) and nullable ones are
+ * stored plus one, with zero for null. Text is UTF-8 preceded by its length.
+ *
+ * Export streams rows from the repositories in one read-only transaction;
+ * the links of each thousand books are read with one query per link table.
+ * Import reads the file in batches, each written with one statement.
+ * Memory does not grow with the number of books; only author numbers are
+ * kept, eight bytes per author.
+ *
+ * Import merges into the library: authors are matched by normalized name
+ * (filling in missing years), and books already present (same Gutendex id,
+ * or same title and author for books added by hand) are skipped.
+ */
+@Service
+public class LibraryArchive {
+
+    private static final Logger log = LoggerFactory.getLogger(LibraryArchive.class);
+
+    private static final byte[] MAGIC = {'L', 'L', 'I', 'B'};
+    private static final int VERSION = 4;
+
+    private static final int END = 0;
+    private static final int LANGUAGE = 1;
+    private static final int AUTHOR = 2;
+    private static final int BOOK = 3;
+    private static final int SUBJECT = 4;
+
+    // Rows written per statement on import
+    private static final int BATCH_SIZE = 5000;
+    // Books whose links are read with one query per link table on export
+    private static final int LINK_BATCH_SIZE = 1000;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // "xmax = 0" is only true for rows this statement inserted, not for updated ones
+    private static final String UPSERT_AUTHORS =
+            "INSERT INTO authors (id, name, normalized_name, birth_year, death_year) " +
+            "SELECT nextval('authors_seq'), t.name, t.normalized_name, t.birth_year, t.death_year " +
+            "FROM unnest(?::text[], ?::text[], ?::int[], ?::int[]) AS t(name, normalized_name, birth_year, death_year) " +
+            "ON CONFLICT (normalized_name) DO UPDATE SET " +
+            "birth_year = coalesce(authors.birth_year, EXCLUDED.birth_year), " +
+            "death_year = coalesce(authors.death_year, EXCLUDED.death_year) " +
+            "RETURNING id, normalized_name, xmax = 0 AS inserted";
+
+    private static final String INSERT_BOOKS =
+            "INSERT INTO books (id, title, language_id, publication_year, download_count, author_id, gutendex_id, " +
+            "content_fingerprint) " +
+            "SELECT nextval('books_seq'), t.* " +
+            "FROM unnest(?::text[], ?::bigint[], ?::int[], ?::int[], ?::bigint[], ?::int[], ?::bigint[]) " +
+            "AS t(title, language_id, publication_year, download_count, author_id, gutendex_id, content_fingerprint) " +
+            "WHERE t.gutendex_id IS NOT NULL OR NOT EXISTS (SELECT 1 FROM books b WHERE b.gutendex_id IS NULL " +
+            "AND b.title = t.title AND b.author_id IS NOT DISTINCT FROM t.author_id) " +
+            "ON CONFLICT (gutendex_id) DO NOTHING " +
+            "RETURNING id, title, author_id, gutendex_id";
+
+    private static final String SELECT_BOOK_AUTHORS =
+            "SELECT book_id, author_id FROM book_authors WHERE book_id = ANY(?) ORDER BY book_id, position";
+
+    private static final String SELECT_BOOK_LANGUAGES =
+            "SELECT bl.book_id, l.code FROM book_languages bl JOIN languages l ON l.id = bl.language_id " +
+            "WHERE bl.book_id = ANY(?) ORDER BY bl.book_id, l.id";
+
+    private static final String SELECT_BOOK_SUBJECTS =
+            "SELECT bs.book_id, s.name FROM book_subjects bs JOIN subjects s ON s.id = bs.subject_id " +
+            "WHERE bs.book_id = ANY(?) ORDER BY bs.book_id, s.id";
+
+    private static final String INSERT_BOOK_AUTHORS =
+            "INSERT INTO book_authors (book_id, author_id, position) " +
+            "SELECT * FROM unnest(?::bigint[], ?::bigint[], ?::int[]) ON CONFLICT DO NOTHING";
+
+    private static final String INSERT_BOOK_LANGUAGES =
+            "INSERT INTO book_languages (book_id, language_id) " +
+            "SELECT * FROM unnest(?::bigint[], ?::bigint[]) ON CONFLICT DO NOTHING";
+
+    private static final String INSERT_BOOK_SUBJECTS =
+            "INSERT INTO book_subjects (book_id, subject_id) " +
+            "SELECT * FROM unnest(?::bigint[], ?::bigint[]) ON CONFLICT DO NOTHING";
+
+    @Autowired
+    private LibraryReader libraryReader;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private DictionaryResolver dictionaryResolver;
+
+    @Autowired
+    private LibraryViews libraryViews;
+
+    /**
+     * Writes every author and book to a file. The file is replaced only once
+     * the export is complete.
+     * @param file Where to write the archive
+     * @return What was written
+     * @throws UncheckedIOException if the file can't be written
+     */
+    public ExportResult exportTo(Path file) {
+        long started = System.nanoTime();
+        Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+        // Authors and books are read from one snapshot, so every book's author is in the file
+        TransactionTemplate snapshot = new TransactionTemplate(transactionManager);
+        snapshot.setReadOnly(true);
+        snapshot.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+
+        try {
+            long[] counts;
+            try (Writer out = new Writer(Files.newOutputStream(tempFile))) {
+                counts = snapshot.execute(status -> {
+                    IdList authorIds = new IdList();
+                    long authors = libraryReader.forEachAuthor(author -> {
+                        authorIds.add(author.getId());
+                        out.writeAuthor(author);
+                    });
+                    // Links are read for a batch of books at a time, instead of one collection per book
+                    List<Long> bookIds = new ArrayList<>(LINK_BATCH_SIZE);
+                    List<BookRow> pending = new ArrayList<>(LINK_BATCH_SIZE);
+                    long books = libraryReader.forEachBook(book -> {
+                        bookIds.add(book.getId());
+                        pending.add(BookRow.of(book));
+                        if (pending.size() == LINK_BATCH_SIZE) {
+                            writeBooks(out, bookIds, pending, authorIds);
+                        }
+                    });
+                    writeBooks(out, bookIds, pending, authorIds);
+                    return new long[] {authors, books};
+                });
+                out.finish();
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new ExportResult(counts[0], counts[1], Files.size(file), Duration.ofNanos(System.nanoTime() - started));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing " + file, e);
+        } finally {
+            deleteQuietly(tempFile);
+        }
+    }
+
+    /**
+     * Writes a batch of books with their authors, languages and subjects, then empties the batch.
+     */
+    private void writeBooks(Writer out, List<Long> bookIds, List<BookRow> rows, IdList authorIds) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        Map<Long, List<Long>> authors = readLinks(SELECT_BOOK_AUTHORS, bookIds, (rs, row) -> rs.getLong(2));
+        Map<Long, List<String>> languages = readLinks(SELECT_BOOK_LANGUAGES, bookIds, (rs, row) -> rs.getString(2));
+        Map<Long, List<String>> subjects = readLinks(SELECT_BOOK_SUBJECTS, bookIds, (rs, row) -> rs.getString(2));
+        for (int i = 0; i < rows.size(); i++) {
+            Long bookId = bookIds.get(i);
+            out.writeBook(rows.get(i).withLinks(authors.getOrDefault(bookId, List.of()),
+                    languages.getOrDefault(bookId, List.of()), subjects.getOrDefault(bookId, List.of())), authorIds);
+        }
+        bookIds.clear();
+        rows.clear();
+    }
+
+    // Linked values per book id, in the order of the query
+    private <T> Map<Long, List<T>> readLinks(String sql, List<Long> bookIds, RowMapper<T> value) {
+        Map<Long, List<T>> links = new HashMap<>();
+        jdbcTemplate.query(sql, ps -> ps.setArray(1, ps.getConnection().createArrayOf("int8", bookIds.toArray())),
+                rs -> {
+                    links.computeIfAbsent(rs.getLong(1), id -> new ArrayList<>()).add(value.mapRow(rs, 0));
+                });
+        return links;
+    }
+
+    // Only left behind by a failed export
+    private static void deleteQuietly(Path tempFile) {
+        try {
+            Files.deleteIfExists(tempFile);
+        } catch (IOException e) {
+            log.warn("Could not delete {}: {}", tempFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Adds the authors and books of an archive to the library.
+     * @param file An archive written by exportTo
+     * @return What was read and added
+     * @throws UncheckedIOException if the file can't be read or isn't an archive
+     */
+    public ImportResult importFrom(Path file) {
+        long started = System.nanoTime();
+        List<String> languages = new ArrayList<>();
+        List<String> subjects = new ArrayList<>();
+        IdList authorIds = new IdList();
+        List<AuthorRow> authors = new ArrayList<>(BATCH_SIZE);
+        List<BookRow> books = new ArrayList<>(BATCH_SIZE);
+        long authorsRead = 0;
+        long authorsAdded = 0;
+        long booksRead = 0;
+        long booksAdded = 0;
+
+        try (Reader in = new Reader(Files.newInputStream(file))) {
+            for (int type = in.readByte(); type != END; type = in.readByte()) {
+                switch (type) {
+                    case LANGUAGE -> languages.add(in.readText());
+                    case SUBJECT -> subjects.add(in.readText());
+                    case AUTHOR -> {
+                        authors.add(new AuthorRow(in.readText(), in.readNullableInt(), in.readNullableInt()));
+                        authorsRead++;
+                        if (authors.size() == BATCH_SIZE) {
+                            authorsAdded += saveAuthors(authors, authorIds);
+                        }
+                    }
+                    case BOOK -> {
+                        // Books only refer to authors before them, so those must be saved first
+                        if (!authors.isEmpty()) {
+                            authorsAdded += saveAuthors(authors, authorIds);
+                        }
+                        String title = in.readText();
+                        int language = in.readRef();
+                        Integer publicationYear = in.readNullableInt();
+                        Integer downloadCount = in.version() >= 2 ? in.readNullableInt() : null;
+                        // Later versions only have the list of authors, which starts with this one
+                        int author = in.version() <= 3 ? in.readRef() : -1;
+                        Integer gutendexId = in.readNullableInt();
+                        Long contentFingerprint = in.readNullableLong();
+
+                        List<Long> bookAuthors = new ArrayList<>();
+                        List<String> bookLanguages = new ArrayList<>();
+                        List<String> bookSubjects = new ArrayList<>();
+                        if (in.version() >= 3) {
+                            for (int i = in.readCount(); i > 0; i--) {
+                                bookAuthors.add(authorIds.get(in.readRef()));
+                            }
+                            for (int i = in.readCount(); i > 0; i--) {
+                                bookLanguages.add(languages.get(in.readRef()));
+                            }
+                            for (int i = in.readCount(); i > 0; i--) {
+                                bookSubjects.add(subjects.get(in.readRef()));
+                            }
+                        } else {
+                            // Older files have one author and language, linked the way db/book-relations.sql does
+                            if (author >= 0) {
+                                bookAuthors.add(authorIds.get(author));
+                            }
+                            if (language >= 0) {
+                                bookLanguages.add(languages.get(language));
+                            }
+                        }
+
+                        Long mainAuthor = author >= 0 ? Long.valueOf(authorIds.get(author))
+                                : bookAuthors.isEmpty() ? null : bookAuthors.get(0);
+                        books.add(new BookRow(title,
+                                language >= 0 ? languages.get(language) : null,
+                                publicationYear,
+                                downloadCount,
+                                mainAuthor,
+                                gutendexId,
+                                contentFingerprint,
+                                bookAuthors,
+                                bookLanguages,
+                                bookSubjects));
+                        booksRead++;
+                        if (books.size() == BATCH_SIZE) {
+                            booksAdded += saveBooks(books);
+                        }
+                    }
+                    default -> throw new IOException("Unknown record type " + type + " in " + file);
+                }
+            }
+            authorsAdded += saveAuthors(authors, authorIds);
+            booksAdded += saveBooks(books);
+        } catch (EOFException e) {
+            throw new UncheckedIOException("Archive " + file + " is truncated", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading " + file, e);
+        } catch (IndexOutOfBoundsException e) {
+            throw new UncheckedIOException(new IOException("Archive " + file + " is corrupt", e));
+        } finally {
+            // Whatever was committed before a failure must show up too
+            if (authorsRead + booksRead > 0) {
+                libraryViews.refresh();
+            }
+        }
+        return new ImportResult(authorsRead, authorsAdded, booksRead, booksAdded,
+                Duration.ofNanos(System.nanoTime() - started));
+    }
+
+    /**
+     * Upserts a batch of authors and records their ids, in file order.
+     * @return Number of authors that were new
+     */
+    private int saveAuthors(List<AuthorRow> rows, IdList authorIds) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        // The same person twice in one statement would make the upsert fail
+        Map<String, AuthorRow> unique = new LinkedHashMap<>();
+        rows.forEach(row -> unique.putIfAbsent(row.normalizedName(), row));
+        List<AuthorRow> distinct = new ArrayList<>(unique.values());
+
+        Map<String, Long> ids = new HashMap<>();
+        int[] inserted = {0};
+        transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(UPSERT_AUTHORS, ps -> {
+            setArray(ps, 1, "text", distinct, AuthorRow::name);
+            setArray(ps, 2, "text", distinct, AuthorRow::normalizedName);
+            setArray(ps, 3, "int4", distinct, AuthorRow::birthYear);
+            setArray(ps, 4, "int4", distinct, AuthorRow::deathYear);
+        }, rs -> {
+            ids.put(rs.getString("normalized_name"), rs.getLong("id"));
+            if (rs.getBoolean("inserted")) {
+                inserted[0]++;
+            }
+        }));
+
+        rows.forEach(row -> authorIds.add(ids.get(row.normalizedName())));
+        rows.clear();
+        return inserted[0];
+    }
+
+    /**
+     * Inserts a batch of books, skipping those already in the library, and
+     * links the new ones to their authors, languages and subjects.
+     * @return Number of books added
+     */
+    private int saveBooks(List<BookRow> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        Map<String, Long> languageIds = dictionaryResolver.languageIds(rows.stream()
+                .flatMap(row -> Stream.concat(Stream.ofNullable(row.language()), row.languages().stream())).toList());
+        Map<String, Long> subjectIds = dictionaryResolver.subjectIds(
+                rows.stream().flatMap(row -> row.subjects().stream()).toList());
+
+        Integer added = transactionTemplate.execute(status -> {
+            Map<String, Long> newBookIds = new HashMap<>();
+            jdbcTemplate.query(INSERT_BOOKS, ps -> {
+                setArray(ps, 1, "text", rows, BookRow::title);
+                setArray(ps, 2, "int8", rows, row -> languageIds.get(DictionaryResolver.normalizeLanguage(row.language())));
+                setArray(ps, 3, "int4", rows, BookRow::publicationYear);
+                setArray(ps, 4, "int4", rows, BookRow::downloadCount);
+                setArray(ps, 5, "int8", rows, BookRow::authorId);
+                setArray(ps, 6, "int4", rows, BookRow::gutendexId);
+                setArray(ps, 7, "int8", rows, BookRow::contentFingerprint);
+            }, rs -> {
+                newBookIds.put(BookRow.key(rs.getString("title"), rs.getObject("author_id", Long.class),
+                        rs.getObject("gutendex_id", Integer.class)), rs.getLong("id"));
+            });
+
+            // Link tables are written as parallel columns: book id, linked id (and position)
+            List<Object[]> authorLinks = new ArrayList<>();
+            List<Object[]> languageLinks = new ArrayList<>();
+            List<Object[]> subjectLinks = new ArrayList<>();
+            for (BookRow row : rows) {
+                Long bookId = newBookIds.get(row.key());
+                if (bookId == null) {
+                    continue;
+                }
+                for (int position = 0; position < row.authors().size(); position++) {
+                    authorLinks.add(new Object[] {bookId, row.authors().get(position), position});
+                }
+                row.languages().forEach(code -> languageLinks.add(
+                        new Object[] {bookId, languageIds.get(DictionaryResolver.normalizeLanguage(code))}));
+                row.subjects().forEach(name -> subjectLinks.add(
+                        new Object[] {bookId, subjectIds.get(DictionaryResolver.normalizeSubject(name))}));
+            }
+            insertLinks(INSERT_BOOK_AUTHORS, authorLinks, "int8", "int8", "int4");
+            insertLinks(INSERT_BOOK_LANGUAGES, languageLinks, "int8", "int8");
+            insertLinks(INSERT_BOOK_SUBJECTS, subjectLinks, "int8", "int8");
+            return newBookIds.size();
+        });
+        rows.clear();
+        return added != null ? added : 0;
+    }
+
+    private void insertLinks(String sql, List<Object[]> links, String... sqlTypes) {
+        if (links.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(sql, ps -> {
+            for (int column = 0; column < sqlTypes.length; column++) {
+                int index = column;
+                setArray(ps, column + 1, sqlTypes[column], links, link -> link[index]);
+            }
+        });
+    }
+
+    private static <T> void setArray(PreparedStatement ps, int index, String sqlType, List<T> rows,
+                                     Function<T, Object> column) throws SQLException {
+        ps.setArray(index, ps.getConnection().createArrayOf(sqlType, rows.stream().map(column).toArray()));
+    }
+
+    private record AuthorRow(String name, String normalizedName, Integer birthYear, Integer deathYear) {
+
+        AuthorRow(String name, Integer birthYear, Integer deathYear) {
+            this(name, AuthorResolver.normalize(name), birthYear, deathYear);
+        }
+    }
+
+    private record BookRow(String title, String language, Integer publicationYear, Integer downloadCount,
+                           Long authorId, Integer gutendexId, Long contentFingerprint,
+                           List<Long> authors, List<String> languages, List<String> subjects) {
+
+        // What tells books apart on insert: the Gutendex id, or title and author for books added by hand
+        static String key(String title, Long authorId, Integer gutendexId) {
+            return gutendexId != null ? "#" + gutendexId : title + "\u0000" + authorId;
+        }
+
+        String key() {
+            return key(title, authorId, gutendexId);
+        }
+
+        // The book's own columns; links are read separately
+        static BookRow of(Book book) {
+            return new BookRow(book.getTitle(), book.getLanguageCode(), book.getPublicationYear(), book.getDownloadCount(),
+                    book.getAuthor() != null ? book.getAuthor().getId() : null, book.getGutendexId(),
+                    book.getContentFingerprint(), List.of(), List.of(), List.of());
+        }
+
+        BookRow withLinks(List<Long> authors, List<String> languages, List<String> subjects) {
+            return new BookRow(title, language, publicationYear, downloadCount, authorId, gutendexId,
+                    contentFingerprint, authors, languages, subjects);
+        }
+    }
+
+    /**
+     * Growable list of ids without boxing. Export adds ids in increasing
+     * order, so a position can be found with a binary search.
+     */
+    private static final class IdList {
+
+        private long[] ids = new long[1024];
+        private int size;
+
+        void add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+
+        long get(int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return ids[index];
+        }
+
+        int indexOf(long id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                throw new IllegalStateException("Author " + id + " was not exported");
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Writes archive records. Remembers which languages and subjects were written already.
+     */
+    private static final class Writer implements AutoCloseable {
+
+        private final DataOutputStream out;
+        private final Map<String, Integer> languages = new HashMap<>();
+        private final Map<String, Integer> subjects = new HashMap<>();
+
+        Writer(OutputStream out) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+            this.out.write(MAGIC);
+            this.out.writeByte(VERSION);
+        }
+
+        void writeAuthor(Author author) {
+            try {
+                out.writeByte(AUTHOR);
+                writeText(author.getName());
+                writeNullableInt(author.getBirthYear());
+                writeNullableInt(author.getDeathYear());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void writeBook(BookRow book, IdList authorIds) {
+            try {
+                // Dictionary records go before the book that first uses them
+                int language = dictionaryIndex(languages, LANGUAGE, book.language());
+                List<Integer> bookLanguages = new ArrayList<>();
+                for (String code : book.languages()) {
+                    bookLanguages.add(dictionaryIndex(languages, LANGUAGE, code));
+                }
+                List<Integer> bookSubjects = new ArrayList<>();
+                for (String name : book.subjects()) {
+                    bookSubjects.add(dictionaryIndex(subjects, SUBJECT, name));
+                }
+                // A book without author links (stored before they existed) keeps its main author
+                List<Long> authors = book.authors().isEmpty() && book.authorId() != null
+                        ? List.of(book.authorId())
+                        : book.authors();
+                List<Integer> bookAuthors = new ArrayList<>();
+                for (Long authorId : authors) {
+                    bookAuthors.add(authorIds.indexOf(authorId));
+                }
+
+                out.writeByte(BOOK);
+                writeText(book.title());
+                writeVarLong(language + 1);
+                writeNullableInt(book.publicationYear());
+                writeNullableInt(book.downloadCount());
+                writeNullableInt(book.gutendexId());
+                writeNullableLong(book.contentFingerprint());
+                writeRefs(bookAuthors);
+                writeRefs(bookLanguages);
+                writeRefs(bookSubjects);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void finish() throws IOException {
+            out.writeByte(END);
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        // Writes a LANGUAGE or SUBJECT record the first time a value is seen
+        private int dictionaryIndex(Map<String, Integer> dictionary, int recordType, String value) throws IOException {
+            if (value == null) {
+                return -1;
+            }
+            Integer index = dictionary.get(value);
+            if (index == null) {
+                index = dictionary.size();
+                dictionary.put(value, index);
+                out.writeByte(recordType);
+                writeText(value);
+            }
+            return index;
+        }
+
+        private void writeRefs(List<Integer> indexes) throws IOException {
+            writeVarLong(indexes.size());
+            for (int index : indexes) {
+                writeVarLong(index + 1);
+            }
+        }
+
+        private void writeText(String text) throws IOException {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            out.write(bytes);
+        }
+
+        private void writeNullableInt(Integer value) throws IOException {
+            // Zigzag keeps small negative years (BC) short too
+            writeVarLong(value == null ? 0 : zigzag(value) + 1);
+        }
+
+        // Fingerprints are random 64-bit values, so a varint would only make them longer
+        private void writeNullableLong(Long value) throws IOException {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeLong(value);
+            }
+        }
+
+        private void writeVarLong(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+
+    /**
+     * Reads archive records written by Writer.
+     */
+    private static final class Reader implements AutoCloseable {
+
+        private final DataInputStream in;
+        private final int version;
+
+        Reader(InputStream in) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+            byte[] magic = new byte[MAGIC.length];
+            if (this.in.readNBytes(magic, 0, magic.length) < magic.length || !Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a library archive");
+            }
+            version = this.in.readUnsignedByte();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported archive version " + version);
+            }
+        }
+
+        int version() {
+            return version;
+        }
+
+        int readByte() throws IOException {
+            return in.readUnsignedByte();
+        }
+
+        String readText() throws IOException {
+            byte[] bytes = new byte[Math.toIntExact(readVarLong())];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        // Position in a dictionary or author list, or -1 for none
+        int readRef() throws IOException {
+            return Math.toIntExact(readVarLong()) - 1;
+        }
+
+        // Number of entries in a list that follows
+        int readCount() throws IOException {
+            return Math.toIntExact(readVarLong());
+        }
+
+        Integer readNullableInt() throws IOException {
+            long value = readVarLong();
+            return value == 0 ? null : Math.toIntExact(unzigzag(value - 1));
+        }
+
+        Long readNullableLong() throws IOException {
+            return in.readBoolean() ? in.readLong() : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = in.readUnsignedByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed number");
+        }
+
+        private static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    /**
+     * Summary of an export.
+     * @param authors Authors written
+     * @param books Books written
+     * @param bytes Size of the file
+     * @param elapsed Time taken
+     */
+    public record ExportResult(long authors, long books, long bytes, Duration elapsed) {
+
+        @Override
+        public String toString() {
+            return books + " books and " + authors + " authors exported (" + bytes / 1024 + " KB) in " +
+                   elapsed.toMillis() + " ms";
+        }
+    }
+
+    /**
+     * Summary of an import.
+     * @param authorsRead Authors in the file
+     * @param authorsAdded Authors that were not in the library yet
+     * @param booksRead Books in the file
+     * @param booksAdded Books that were not in the library yet
+     * @param elapsed Time taken
+     */
+    public record ImportResult(long authorsRead, long authorsAdded, long booksRead, long booksAdded, Duration elapsed) {
+
+        @Override
+        public String toString() {
+            return booksAdded + " of " + booksRead + " books and " + authorsAdded + " of " + authorsRead +
+                   " authors added in " + elapsed.toMillis() + " ms";
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.alura.literalura;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.PageableDefault;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * REST API over the library, the HTTP counterpart of the console menu.
+ * Requests run on virtual threads (spring.threads.virtual.enabled), responses
+ * are compressed, and GET responses carry an ETag (see WebConfig).
+ */
+@RestController
+@RequestMapping("/api")
+public class LibraryController {
+
+    private static final int MAX_SEARCH_LIMIT = 200;
+    private static final int ID_CHUNK_SIZE = 1000;
+    private static final int MAX_TOP_AUTHORS = 100;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private AuthorRepository authorRepository;
+
+    @Autowired
+    private BookSearchIndex bookSearchIndex;
+
+    @Autowired
+    private LanguageIndex languageIndex;
+
+    @Autowired
+    private AuthorLifespanIndex authorLifespanIndex;
+
+    @Autowired
+    private GutendexService gutendexService;
+
+    @Autowired
+    private GutendexCombinedSearch gutendexCombinedSearch;
+
+    @Autowired
+    private ImportJobService importJobService;
+
+    @Autowired
+    private SecondLevelCache secondLevelCache;
+
+    @Autowired
+    private BookSyncService bookSyncService;
+
+    @Autowired
+    private LibraryStatistics libraryStatistics;
+
+    @Value("${literalura.search.engine:memory}")
+    private String searchEngine;
+
+    /**
+     * Lists books a page at a time (?page=0&size=20&sort=title).
+     */
+    @GetMapping("/books")
+    public PageView<BookView> listBooks(@PageableDefault(size = 20, sort = "id") Pageable pageable) {
+        return PageView.of(bookRepository.findAll(pageable), BookView::of);
+    }
+
+    @GetMapping("/books/{id}")
+    public BookView getBook(@PathVariable Long id) {
+        return bookRepository.findById(id)
+                .map(BookView::of)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Book " + id + " not found"));
+    }
+
+    /**
+     * Searches titles and author names, best matches first.
+     */
+    @GetMapping("/books/search")
+    public List<BookSummary> searchBooks(@RequestParam("q") String query,
+                                         @RequestParam(defaultValue = "50") int limit) {
+        int cappedLimit = Math.clamp(limit, 1, MAX_SEARCH_LIMIT);
+        if (searchEngine.equalsIgnoreCase("database")) {
+            List<Book> books = bookRepository.searchByTitleFullText(query, cappedLimit);
+            if (books.isEmpty()) {
+                books = bookRepository.searchByTitleSimilarity(query, cappedLimit);
+            }
+            return books.stream().map(LibraryController::toSummary).toList();
+        }
+        return bookSearchIndex.search(query, cappedLimit).stream()
+                .map(hit -> new BookSummary(hit.title(), hit.language(), null, hit.authorName()))
+                .toList();
+    }
+
+    @GetMapping("/books/language/{language}")
+    public List<BookSummary> findBooksByLanguage(@PathVariable String language) {
+        return bookRepository.findSummariesByLanguage(language);
+    }
+
+    /**
+     * Books in every one of the languages (?codes=en,fr), answered from the
+     * in-memory language and search indexes.
+     */
+    @GetMapping("/books/languages")
+    public LanguageFilter findBooksByLanguages(@RequestParam List<String> codes,
+                                               @RequestParam(defaultValue = "50") int limit) {
+        BitSet books = languageIndex.books(codes);
+        List<Long> ids = books.stream().limit(Math.clamp(limit, 1, MAX_SEARCH_LIMIT)).mapToObj(Long::valueOf).toList();
+        List<String> languages = codes.stream().map(DictionaryResolver::normalizeLanguage).filter(Objects::nonNull)
+                .distinct().toList();
+        return new LanguageFilter(languages, books.cardinality(), bookSearchIndex.summaries(ids));
+    }
+
+    /**
+     * Books with a subject heading containing the text (?q=science fiction).
+     */
+    @GetMapping("/books/subject")
+    public List<BookSummary> findBooksBySubject(@RequestParam("q") String subject,
+                                                @RequestParam(defaultValue = "50") int limit) {
+        return bookRepository.findSummariesBySubject(subject.trim(), Limit.of(Math.clamp(limit, 1, MAX_SEARCH_LIMIT)));
+    }
+
+    @GetMapping("/authors")
+    public PageView<AuthorView> listAuthors(@PageableDefault(size = 20, sort = "id") Pageable pageable) {
+        return PageView.of(authorRepository.findAll(pageable), AuthorView::of);
+    }
+
+    @GetMapping("/authors/{id}")
+    public AuthorView getAuthor(@PathVariable Long id) {
+        return authorRepository.findById(id)
+                .map(AuthorView::of)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Author " + id + " not found"));
+    }
+
+    /**
+     * Authors alive in a year, ordered by birth year.
+     */
+    @GetMapping("/authors/alive")
+    public List<AuthorView> findAuthorsAliveInYear(@RequestParam int year) {
+        List<Long> authorIds = authorLifespanIndex.aliveIn(year);
+        List<AuthorView> authors = new ArrayList<>(authorIds.size());
+        for (int from = 0; from < authorIds.size(); from += ID_CHUNK_SIZE) {
+            List<Long> chunk = authorIds.subList(from, Math.min(from + ID_CHUNK_SIZE, authorIds.size()));
+            authorRepository.findAllById(chunk).forEach(author -> authors.add(AuthorView.of(author)));
+        }
+        return authors;
+    }
+
+    /**
+     * Number of authors alive in each decade of a range.
+     */
+    @GetMapping("/authors/alive/decades")
+    public Map<Integer, Integer> countAuthorsAliveByDecade(@RequestParam int from, @RequestParam int to) {
+        if (to < from) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "'to' must not be before 'from'");
+        }
+        return authorLifespanIndex.aliveByDecade(from, to);
+    }
+
+    /**
+     * Searches Gutendex by title without saving anything.
+     */
+    @GetMapping("/gutendex/books")
+    public List<GutendexBook> searchGutendex(@RequestParam String title) {
+        return switch (gutendexService.searchBooksByTitle(title)) {
+            case GutendexResult.Success<List<GutendexBook>> success -> success.value();
+            case GutendexResult.Failure<List<GutendexBook>> failure ->
+                    throw new ResponseStatusException(statusOf(failure.kind()), failure.message());
+        };
+    }
+
+    /**
+     * Searches Gutendex by title, author and language in parallel (give any of them).
+     * Results are merged, ranked by downloads, and may be partial if Gutendex is slow.
+     */
+    @GetMapping("/gutendex/search")
+    public GutendexCombinedSearch.CombinedResult searchGutendexCombined(@RequestParam(required = false) String title,
+                                                                        @RequestParam(required = false) String author,
+                                                                        @RequestParam(required = false) String language) {
+        if (!isPresent(title) && !isPresent(author) && !isPresent(language)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Give a title, author or language");
+        }
+        return gutendexCombinedSearch.search(title, author, language);
+    }
+
+    /**
+     * Queues a background import of Gutendex books, either by id or every
+     * result of a search. Answers right away with the job to poll.
+     */
+    @PostMapping("/imports")
+    public ResponseEntity<ImportJobView> submitImport(@RequestBody ImportRequest request) {
+        ImportJob job;
+        try {
+            if (request.ids() != null && !request.ids().isEmpty()) {
+                job = importJobService.submitIds(request.ids());
+            } else if (isPresent(request.title())) {
+                job = importJobService.submitSearch(ImportJob.Type.TITLE_SEARCH, request.title());
+            } else if (isPresent(request.author())) {
+                job = importJobService.submitSearch(ImportJob.Type.AUTHOR_SEARCH, request.author());
+            } else if (isPresent(request.language())) {
+                job = importJobService.submitSearch(ImportJob.Type.LANGUAGE_SEARCH, request.language());
+            } else {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Give ids, title, author or language to import");
+            }
+        } catch (IllegalArgumentException e) {
+            // Too many ids or too long a search for one job
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(ImportJobView.of(job));
+    }
+
+    /**
+     * Recent import jobs, newest first.
+     */
+    @GetMapping("/imports")
+    public List<ImportJobView> listImports(@RequestParam(defaultValue = "20") int limit) {
+        return importJobService.recentJobs(Math.clamp(limit, 1, MAX_SEARCH_LIMIT)).stream()
+                .map(ImportJobView::of)
+                .toList();
+    }
+
+    /**
+     * Progress of an import job.
+     */
+    @GetMapping("/imports/{id}")
+    public ImportJobView getImport(@PathVariable Long id) {
+        return importJobService.getJob(id)
+                .map(ImportJobView::of)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Import job " + id + " not found"));
+    }
+
+    /**
+     * Imports new Gutendex books and updates changed ones, waiting for the result.
+     */
+    @PostMapping("/sync")
+    public BookSyncService.SyncResult sync() {
+        return bookSyncService.sync();
+    }
+
+    /**
+     * Hit ratios of the entity and query cache.
+     */
+    @GetMapping("/stats/cache")
+    public SecondLevelCache.Report cacheStats() {
+        return secondLevelCache.stats();
+    }
+
+    /**
+     * Books per language, the authors with the most books and a summary of download counts.
+     */
+    @GetMapping("/stats/library")
+    public LibraryStatistics.Report libraryStats(@RequestParam(defaultValue = "10") int top) {
+        return libraryStatistics.report(Math.min(top, MAX_TOP_AUTHORS));
+    }
+
+    /**
+     * Books per language code, counting every language of a book.
+     */
+    @GetMapping("/stats/languages")
+    public Map<String, Integer> languageStats() {
+        return languageIndex.counts();
+    }
+
+    @ExceptionHandler(GutendexException.class)
+    public ResponseEntity<String> handleGutendexError(GutendexException e) {
+        return ResponseEntity.status(statusOf(e.getKind())).body(e.getMessage());
+    }
+
+    private static HttpStatus statusOf(GutendexException.Kind kind) {
+        return switch (kind) {
+            case CIRCUIT_OPEN, RATE_LIMITED -> HttpStatus.SERVICE_UNAVAILABLE;
+            case NETWORK -> HttpStatus.GATEWAY_TIMEOUT;
+            default -> HttpStatus.BAD_GATEWAY;
+        };
+    }
+
+    private static boolean isPresent(String value) {
+        return value != null && !value.isBlank();
+    }
+
+    private static BookSummary toSummary(Book book) {
+        return new BookSummary(book.getTitle(), book.getLanguageCode(), book.getPublicationYear(),
+                book.getAuthorNames());
+    }
+
+    /**
+     * Body of an import request; give one of the fields.
+     * @param ids Gutendex book ids
+     * @param title Import every book of a title search
+     * @param author Import every book of an author search
+     * @param language Import every book in a language
+     */
+    public record ImportRequest(List<Integer> ids, String title, String author, String language) {}
+
+    /**
+     * Result of a language filter.
+     * @param languages The ISO codes that were filtered on
+     * @param total Number of books in all of them
+     * @param books The first of those books, lowest id first
+     */
+    public record LanguageFilter(List<String> languages, int total, List<BookSummary> books) {}
+}
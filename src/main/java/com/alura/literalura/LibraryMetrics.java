@@ -0,0 +1,95 @@
+package com.alura.literalura;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes the application's own statistics as metrics: Gutendex response
+ * cache, circuit breaker and rate limiter, Hibernate's second-level cache,
+ * and the in-memory indexes. Values are read when metrics are scraped.
+ *
+ * Request timers, repository timers (spring.data.repository.invocations) and
+ * connection pool metrics (hikaricp.*) come from Spring Boot.
+ */
+@Component
+public class LibraryMetrics implements MeterBinder {
+
+    @Autowired
+    private GutendexResponseCache responseCache;
+
+    @Autowired
+    private GutendexHttpClient httpClient;
+
+    @Autowired
+    private SecondLevelCache secondLevelCache;
+
+    @Autowired
+    private BookSearchIndex bookSearchIndex;
+
+    @Autowired
+    private AuthorLifespanIndex authorLifespanIndex;
+
+    @Autowired
+    private LanguageIndex languageIndex;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("gutendex.cache.requests", responseCache, cache -> cache.stats().hits())
+                .description("Gutendex response cache lookups")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("gutendex.cache.requests", responseCache, cache -> cache.stats().misses())
+                .description("Gutendex response cache lookups")
+                .tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("gutendex.cache.evictions", responseCache, cache -> cache.stats().evictions())
+                .register(registry);
+        Gauge.builder("gutendex.cache.size", responseCache, cache -> cache.stats().size())
+                .description("Responses held by the Gutendex response cache")
+                .register(registry);
+
+        // One series per state, 1 for the current state
+        for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+            Gauge.builder("gutendex.circuit.state", httpClient,
+                            client -> client.resilienceStats().circuitState() == state ? 1 : 0)
+                    .tag("state", state.name())
+                    .register(registry);
+        }
+        Gauge.builder("gutendex.circuit.consecutive.failures", httpClient,
+                        client -> client.resilienceStats().consecutiveFailures())
+                .register(registry);
+        FunctionCounter.builder("gutendex.circuit.rejected", httpClient, client -> client.resilienceStats().rejectedCalls())
+                .description("Calls failed fast while the circuit was open")
+                .register(registry);
+        FunctionCounter.builder("gutendex.retries", httpClient, client -> client.resilienceStats().retries())
+                .register(registry);
+        Gauge.builder("gutendex.rate.limit.tokens", httpClient, client -> client.resilienceStats().availableTokens())
+                .description("Rate limiter tokens available now")
+                .register(registry);
+        FunctionCounter.builder("gutendex.rate.limit.waits", httpClient, client -> client.resilienceStats().rateLimitWaits())
+                .description("Requests that had to wait for the rate limiter")
+                .register(registry);
+
+        // Ratios since startup; needs hibernate.generate_statistics
+        Gauge.builder("hibernate.cache.hit.ratio", secondLevelCache, cache -> cache.stats().entityHitRatio())
+                .tag("cache", "entity")
+                .register(registry);
+        Gauge.builder("hibernate.cache.hit.ratio", secondLevelCache, cache -> cache.stats().queryHitRatio())
+                .tag("cache", "query")
+                .register(registry);
+
+        Gauge.builder("literalura.index.size", bookSearchIndex, BookSearchIndex::size)
+                .tag("index", "books")
+                .register(registry);
+        Gauge.builder("literalura.index.size", authorLifespanIndex, AuthorLifespanIndex::size)
+                .tag("index", "lifespans")
+                .register(registry);
+        Gauge.builder("literalura.index.size", languageIndex, LanguageIndex::size)
+                .tag("index", "languages")
+                .register(registry);
+    }
+}
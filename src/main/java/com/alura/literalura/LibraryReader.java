@@ -0,0 +1,114 @@
+package com.alura.literalura;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Reads the whole library without loading it into memory at once.
+ * Rows are handed over as they arrive from the database, so memory use
+ * stays the same whatever the size of the library.
+ */
+@Service
+public class LibraryReader {
+
+    // Rows read before the persistence context is cleared
+    private static final int CLEAR_EVERY = 500;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private AuthorRepository authorRepository;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Streams every book, in id order, inside one read-only transaction.
+     * @param action Called for each book; must not keep the entity around
+     * @return Number of books read
+     */
+    @Transactional(readOnly = true)
+    public long forEachBook(Consumer<Book> action) {
+        try (Stream<Book> books = bookRepository.streamAll()) {
+            return drain(books, action);
+        }
+    }
+
+    /**
+     * Streams every author, in id order, inside one read-only transaction.
+     * @param action Called for each author; must not keep the entity around
+     * @return Number of authors read
+     */
+    @Transactional(readOnly = true)
+    public long forEachAuthor(Consumer<Author> action) {
+        try (Stream<Author> authors = authorRepository.streamAll()) {
+            return drain(authors, action);
+        }
+    }
+
+    /**
+     * Walks every book in pages of the given size, one short query per page
+     * (keyset pagination, so late pages are as fast as early ones). Runs in
+     * one read-only transaction, so the action can read a book's authors
+     * (loaded for many books at once); the persistence context is cleared
+     * after every page.
+     * @param pageSize Books per page
+     * @param action Called for each page, in id order; must not keep the entities around
+     * @return Number of books read
+     */
+    @Transactional(readOnly = true)
+    public long forEachBookPage(int pageSize, Consumer<List<Book>> action) {
+        return forEachPage(lastId -> bookRepository.findByIdGreaterThanOrderByIdAsc(lastId, Limit.of(pageSize)),
+                Book::getId, page -> {
+                    action.accept(page);
+                    entityManager.clear();
+                });
+    }
+
+    /**
+     * Walks every author in pages of the given size (keyset pagination).
+     * @param pageSize Authors per page
+     * @param action Called for each page, in id order
+     * @return Number of authors read
+     */
+    public long forEachAuthorPage(int pageSize, Consumer<List<Author>> action) {
+        return forEachPage(lastId -> authorRepository.findByIdGreaterThanOrderByIdAsc(lastId, Limit.of(pageSize)),
+                Author::getId, action);
+    }
+
+    private <T> long drain(Stream<T> rows, Consumer<T> action) {
+        long count = 0;
+        for (T row : (Iterable<T>) rows::iterator) {
+            action.accept(row);
+            // Read entities would otherwise pile up in the persistence context
+            if (++count % CLEAR_EVERY == 0) {
+                entityManager.clear();
+            }
+        }
+        return count;
+    }
+
+    private static <T> long forEachPage(Function<Long, List<T>> nextPage, Function<T, Long> idOf,
+                                        Consumer<List<T>> action) {
+        long count = 0;
+        long lastId = 0;
+        List<T> page = nextPage.apply(lastId);
+        while (!page.isEmpty()) {
+            action.accept(page);
+            count += page.size();
+            lastId = idOf.apply(page.get(page.size() - 1));
+            page = nextPage.apply(lastId);
+        }
+        return count;
+    }
+}
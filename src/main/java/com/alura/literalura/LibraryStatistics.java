@@ -0,0 +1,370 @@
+package com.alura.literalura;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Library statistics kept as running totals: books per language, authors
+ * ranked by number of books (a book counts for each of its authors), and a
+ * summary of the download counts.
+ *
+ * Totals are loaded when the application starts and then updated by
+ * BookStatisticsListener whenever a book is saved or deleted, so a report
+ * costs the same whatever the size of the library. Each book's last
+ * contribution is remembered, which makes a change a matter of taking the
+ * old values out and putting the new ones in. A rebuild computes new totals
+ * without blocking reports, and replays the changes made meanwhile.
+ */
+@Component
+public class LibraryStatistics {
+
+    private static final String UNKNOWN_LANGUAGE = "unknown";
+    // Download counts are grouped by number of digits: 0, 1-9, 10-99, ... up to Integer.MAX_VALUE
+    private static final int DOWNLOAD_BUCKETS = 11;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    // Guarded by this; replaced as a whole by rebuild()
+    private Totals totals = new Totals();
+    // Guarded by this; while a rebuild is loading, the changes it may have missed
+    private List<Consumer<Totals>> changesDuringRebuild;
+    private final Object rebuildLock = new Object();
+
+    /**
+     * Recomputes every total from the books table, when the application starts
+     * (and after bulk loads). Grouping runs as parallel streams over one query
+     * of the needed columns, into new totals that are swapped in at the end;
+     * reports and updates are only blocked for the swap.
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            synchronized (this) {
+                changesDuringRebuild = new ArrayList<>();
+            }
+            try {
+                Totals fresh = Totals.of(BookFacts.of(bookRepository.findAllFacts()));
+                synchronized (this) {
+                    changesDuringRebuild.forEach(change -> change.accept(fresh));
+                    totals = fresh;
+                }
+            } finally {
+                // A failed load keeps the old totals
+                synchronized (this) {
+                    changesDuringRebuild = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a saved book, or replaces what an earlier save of it counted.
+     * @param facts The saved values of the book
+     */
+    public synchronized void put(BookFacts facts) {
+        change(counted -> counted.put(facts));
+    }
+
+    /**
+     * Takes a deleted book out of the totals.
+     * @param bookId Id of the deleted book
+     */
+    public synchronized void remove(Long bookId) {
+        change(counted -> counted.remove(bookId));
+    }
+
+    /**
+     * @param topAuthors How many authors to rank
+     * @return The current totals
+     */
+    public synchronized Report report(int topAuthors) {
+        return totals.report(topAuthors);
+    }
+
+    /**
+     * @return Number of books counted
+     */
+    public synchronized int size() {
+        return totals.books.size();
+    }
+
+    // Must hold this
+    private void change(Consumer<Totals> change) {
+        change.accept(totals);
+        if (changesDuringRebuild != null) {
+            changesDuringRebuild.add(change);
+        }
+    }
+
+    /**
+     * The running totals and each book's last contribution to them.
+     */
+    private static final class Totals {
+
+        private final Map<Long, BookFacts> books = new HashMap<>();
+        private final Map<String, Integer> booksByLanguage = new HashMap<>();
+        private final Map<Long, AuthorCount> authorCounts = new HashMap<>();
+        // Most books first; ties by author id so the order is stable
+        private final TreeSet<AuthorCount> authorRanking = new TreeSet<>(
+                Comparator.comparingInt(AuthorCount::books).reversed().thenComparingLong(AuthorCount::authorId));
+        // Download count -> number of books with it, for the minimum and maximum
+        private final NavigableMap<Integer, Integer> downloadCounts = new TreeMap<>();
+        private final long[] downloadBuckets = new long[DOWNLOAD_BUCKETS];
+        private long downloadSum;
+
+        static Totals of(List<BookFacts> all) {
+            Totals totals = new Totals();
+            totals.books.putAll(all.parallelStream()
+                    .collect(Collectors.toConcurrentMap(BookFacts::bookId, Function.identity())));
+
+            all.parallelStream()
+                    .collect(Collectors.groupingByConcurrent(LibraryStatistics::languageOf, Collectors.counting()))
+                    .forEach((language, count) -> totals.booksByLanguage.put(language, count.intValue()));
+
+            all.parallelStream()
+                    .flatMap(facts -> facts.authors().stream())
+                    .collect(Collectors.groupingByConcurrent(BookAuthor::authorId, Collectors.toList()))
+                    .forEach((authorId, written) -> {
+                        AuthorCount count = new AuthorCount(authorId, written.get(0).name(), written.size());
+                        totals.authorCounts.put(authorId, count);
+                        totals.authorRanking.add(count);
+                    });
+
+            all.parallelStream()
+                    .map(BookFacts::downloadCount)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.groupingByConcurrent(Function.identity(), Collectors.counting()))
+                    .forEach((downloads, count) -> totals.downloadCounts.put(downloads, count.intValue()));
+
+            long[] buckets = all.parallelStream()
+                    .map(BookFacts::downloadCount)
+                    .filter(Objects::nonNull)
+                    .collect(() -> new long[DOWNLOAD_BUCKETS],
+                            (counts, downloads) -> counts[bucketOf(downloads)]++,
+                            (left, right) -> {
+                                for (int i = 0; i < DOWNLOAD_BUCKETS; i++) {
+                                    left[i] += right[i];
+                                }
+                            });
+            System.arraycopy(buckets, 0, totals.downloadBuckets, 0, DOWNLOAD_BUCKETS);
+            totals.downloadSum = all.parallelStream()
+                    .map(BookFacts::downloadCount)
+                    .filter(Objects::nonNull)
+                    .mapToLong(Integer::longValue)
+                    .sum();
+            return totals;
+        }
+
+        void put(BookFacts facts) {
+            BookFacts previous = books.put(facts.bookId(), facts);
+            if (previous != null) {
+                subtract(previous);
+            }
+            add(facts);
+        }
+
+        void remove(Long bookId) {
+            BookFacts previous = books.remove(bookId);
+            if (previous != null) {
+                subtract(previous);
+            }
+        }
+
+        Report report(int topAuthors) {
+            Map<String, Integer> languages = new LinkedHashMap<>();
+            booksByLanguage.entrySet().stream()
+                    .sorted(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                    .forEach(entry -> languages.put(entry.getKey(), entry.getValue()));
+
+            List<AuthorCount> authors = authorRanking.stream().limit(Math.max(topAuthors, 0)).toList();
+            return new Report(books.size(), languages, authors, downloads());
+        }
+
+        private Downloads downloads() {
+            long count = 0;
+            Map<String, Long> distribution = new LinkedHashMap<>();
+            int last = DOWNLOAD_BUCKETS - 1;
+            while (last > 0 && downloadBuckets[last] == 0) {
+                last--;
+            }
+            for (int i = 0; i <= last; i++) {
+                count += downloadBuckets[i];
+                distribution.put(bucketLabel(i), downloadBuckets[i]);
+            }
+            if (count == 0) {
+                return new Downloads(0, 0, null, null, 0.0, Map.of());
+            }
+            return new Downloads(count, downloadSum, downloadCounts.firstKey(), downloadCounts.lastKey(),
+                    (double) downloadSum / count, distribution);
+        }
+
+        private void add(BookFacts facts) {
+            booksByLanguage.merge(languageOf(facts), 1, Integer::sum);
+            for (BookAuthor author : facts.authors()) {
+                AuthorCount current = authorCounts.get(author.authorId());
+                updateAuthor(current, new AuthorCount(author.authorId(), author.name(),
+                        current != null ? current.books() + 1 : 1));
+            }
+            Integer downloads = facts.downloadCount();
+            if (downloads != null) {
+                downloadCounts.merge(downloads, 1, Integer::sum);
+                downloadBuckets[bucketOf(downloads)]++;
+                downloadSum += downloads;
+            }
+        }
+
+        private void subtract(BookFacts facts) {
+            booksByLanguage.computeIfPresent(languageOf(facts), (language, count) -> count > 1 ? count - 1 : null);
+            for (BookAuthor author : facts.authors()) {
+                AuthorCount current = authorCounts.get(author.authorId());
+                if (current != null) {
+                    updateAuthor(current, current.books() > 1
+                            ? new AuthorCount(current.authorId(), current.name(), current.books() - 1)
+                            : null);
+                }
+            }
+            Integer downloads = facts.downloadCount();
+            if (downloads != null) {
+                downloadCounts.computeIfPresent(downloads, (value, count) -> count > 1 ? count - 1 : null);
+                downloadBuckets[bucketOf(downloads)]--;
+                downloadSum -= downloads;
+            }
+        }
+
+        // The ranking is ordered by book count, so an entry is taken out before its count changes
+        private void updateAuthor(AuthorCount current, AuthorCount updated) {
+            if (current != null) {
+                authorRanking.remove(current);
+            }
+            if (updated != null) {
+                authorCounts.put(updated.authorId(), updated);
+                authorRanking.add(updated);
+            } else if (current != null) {
+                authorCounts.remove(current.authorId());
+            }
+        }
+    }
+
+    private static String languageOf(BookFacts facts) {
+        return facts.language() != null ? facts.language() : UNKNOWN_LANGUAGE;
+    }
+
+    // Negative counts shouldn't happen; they are counted with the zeros
+    private static int bucketOf(int downloads) {
+        int bucket = 0;
+        for (long limit = 1; downloads >= limit && bucket < DOWNLOAD_BUCKETS - 1; limit *= 10) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    private static String bucketLabel(int bucket) {
+        if (bucket == 0) {
+            return "0";
+        }
+        long from = (long) Math.pow(10, bucket - 1);
+        return bucket == DOWNLOAD_BUCKETS - 1 ? from + "+" : from + "-" + (from * 10 - 1);
+    }
+
+    /**
+     * What one book adds to the totals.
+     * @param authors Every author of the book, with their names when the book was saved
+     */
+    public record BookFacts(Long bookId, String language, List<BookAuthor> authors, Integer downloadCount) {
+
+        static BookFacts of(Book book) {
+            return new BookFacts(book.getId(), book.getLanguageCode(),
+                    book.getAuthors().stream().map(author -> new BookAuthor(author.getId(), author.getName()))
+                            .distinct().toList(),
+                    book.getDownloadCount());
+        }
+
+        /**
+         * @param rows Rows of findAllFacts, those of a book next to each other
+         * @return The facts of each book, in the order of the rows
+         */
+        static List<BookFacts> of(List<FactRow> rows) {
+            List<BookFacts> all = new ArrayList<>();
+            List<BookAuthor> authors = new ArrayList<>();
+            for (int i = 0; i < rows.size(); i++) {
+                FactRow row = rows.get(i);
+                if (row.authorId() != null) {
+                    authors.add(new BookAuthor(row.authorId(), row.authorName()));
+                }
+                if (i + 1 == rows.size() || !rows.get(i + 1).bookId().equals(row.bookId())) {
+                    all.add(new BookFacts(row.bookId(), row.language(), authors.stream().distinct().toList(),
+                            row.downloadCount()));
+                    authors.clear();
+                }
+            }
+            return all;
+        }
+    }
+
+    /**
+     * An author a book counts for.
+     */
+    public record BookAuthor(long authorId, String name) {}
+
+    /**
+     * A book's counted columns with one of its authors (none for a book without authors).
+     */
+    public record FactRow(Long bookId, String language, Long authorId, String authorName, Integer downloadCount) {}
+
+    /**
+     * An author and how many of their books are in the library.
+     */
+    public record AuthorCount(long authorId, String name, int books) {}
+
+    /**
+     * Summary of the download counts, over the books that have one.
+     * @param distribution Books per range of download counts, lowest first
+     */
+    public record Downloads(long count, long sum, Integer min, Integer max, double average,
+                            Map<String, Long> distribution) {}
+
+    /**
+     * Library totals at one point in time.
+     * @param booksByLanguage Books per language code, most books first
+     * @param topAuthors Authors with the most books, most first
+     */
+    public record Report(int totalBooks, Map<String, Integer> booksByLanguage, List<AuthorCount> topAuthors,
+                         Downloads downloads) {
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder("Books: ").append(totalBooks).append('\n');
+            text.append("\nBy language:\n");
+            booksByLanguage.forEach((language, count) -> text.append(String.format("  %-10s %d%n", language, count)));
+            text.append("\nTop authors:\n");
+            for (AuthorCount author : topAuthors) {
+                text.append(String.format("  %-40s %d%n", author.name(), author.books()));
+            }
+            text.append("\nDownloads (").append(downloads.count()).append(" books with a count):\n");
+            if (downloads.count() > 0) {
+                text.append(String.format("  min %d, max %d, average %.1f, total %d%n",
+                        downloads.min(), downloads.max(), downloads.average(), downloads.sum()));
+                downloads.distribution().forEach((range, count) ->
+                        text.append(String.format("  %-24s %d%n", range, count)));
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.alura.literalura;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * The in-memory copies of library data: search, language and lifespan
+ * indexes, library statistics, known author, language and subject ids and
+ * Hibernate's second-level cache. Entity writes keep them up to date; bulk loads
+ * written with native SQL call refresh() when done.
+ */
+@Component
+public class LibraryViews {
+
+    @Autowired
+    private AuthorResolver authorResolver;
+
+    @Autowired
+    private DictionaryResolver dictionaryResolver;
+
+    @Autowired
+    private BookSearchIndex bookSearchIndex;
+
+    @Autowired
+    private LanguageIndex languageIndex;
+
+    @Autowired
+    private AuthorLifespanIndex authorLifespanIndex;
+
+    @Autowired
+    private LibraryStatistics libraryStatistics;
+
+    @Autowired
+    private SecondLevelCache secondLevelCache;
+
+    /**
+     * Rebuilds everything from the database. Call after the bulk write has committed.
+     */
+    public void refresh() {
+        secondLevelCache.evictAll();
+        authorResolver.clear();
+        dictionaryResolver.clear();
+        bookSearchIndex.rebuild();
+        languageIndex.rebuild();
+        authorLifespanIndex.rebuild();
+        libraryStatistics.rebuild();
+    }
+}
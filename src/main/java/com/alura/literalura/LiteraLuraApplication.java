@@ -4,23 +4,32 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * This is the main class for the LiteraLura application.
  * It's a simple book management system that helps you keep track of books.
  */
 @SpringBootApplication
+@EnableScheduling
 public class LiteraLuraApplication implements CommandLineRunner {
 
     @Autowired
     private LiteraLuraService service;
 
+    // Set to false to run only the REST API (e.g. on a server without a terminal)
+    @Value("${literalura.console.enabled:true}")
+    private boolean consoleEnabled;
+
     public static void main(String[] args) {
         SpringApplication.run(LiteraLuraApplication.class, args);
     }
 
     @Override
     public void run(String... args) throws Exception {
-        service.start();
+        if (consoleEnabled) {
+            service.start();
+        }
     }
 }
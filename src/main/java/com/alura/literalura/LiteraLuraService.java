@@ -1,11 +1,22 @@
 package com.alura.literalura;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.UncheckedIOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Scanner;
+import java.util.stream.Collectors;
 
 /**
  * This is the main service class for LiteraLura.
@@ -14,6 +25,18 @@ import java.util.Scanner;
 @Service
 public class LiteraLuraService {
 
+    // Most results shown for a local search
+    private static final int SEARCH_RESULT_LIMIT = 50;
+
+    // Import jobs shown by option 10
+    private static final int RECENT_JOBS_LIMIT = 10;
+
+    // Authors ranked by option 13
+    private static final int TOP_AUTHORS = 10;
+
+    // Most ids passed to a single findAllById query
+    private static final int ID_CHUNK_SIZE = 1000;
+
     @Autowired
     private BookRepository bookRepository;
 
@@ -23,6 +46,48 @@ public class LiteraLuraService {
     @Autowired
     private GutendexService gutendexService;
 
+    @Autowired
+    private GutendexCombinedSearch gutendexCombinedSearch;
+
+    @Autowired
+    private GutendexHarvester gutendexHarvester;
+
+    @Autowired
+    private BookImportService bookImportService;
+
+    @Autowired
+    private ImportJobService importJobService;
+
+    @Autowired
+    private BookSyncService bookSyncService;
+
+    @Autowired
+    private CatalogDumpLoader catalogDumpLoader;
+
+    @Autowired
+    private LibraryArchive libraryArchive;
+
+    @Autowired
+    private BookSearchIndex bookSearchIndex;
+
+    @Autowired
+    private LanguageIndex languageIndex;
+
+    @Autowired
+    private LibraryReader libraryReader;
+
+    @Autowired
+    private AuthorLifespanIndex authorLifespanIndex;
+
+    @Autowired
+    private LibraryStatistics libraryStatistics;
+
+    @Autowired
+    private DictionaryResolver dictionaryResolver;
+
+    @Value("${literalura.search.engine:memory}")
+    private String searchEngine;
+
     private Scanner scanner = new Scanner(System.in);
 
     /**
@@ -56,9 +121,15 @@ public class LiteraLuraService {
         System.out.println("6. Find authors alive in a specific year");
         System.out.println("7. Search books by title");
         System.out.println("8. Search books from Gutendex API");
+        System.out.println("9. Harvest the full Gutendex catalog");
+        System.out.println("10. Show import jobs");
+        System.out.println("11. Sync the library with Gutendex");
+        System.out.println("12. Load, export or import library files");
+        System.out.println("13. Show library statistics");
+        System.out.println("14. Find books by subject");
         System.out.println("0. Exit");
         System.out.println("═".repeat(40));
-        System.out.print("Choose an option (0-8): ");
+        System.out.print("Choose an option (0-14): ");
     }
 
     /**
@@ -67,10 +138,10 @@ public class LiteraLuraService {
     private int getChoice() {
         try {
             int choice = Integer.parseInt(scanner.nextLine());
-            if (choice >= 0 && choice <= 8) {
+            if (choice >= 0 && choice <= 14) {
                 return choice;
             } else {
-                System.out.println("❌ Please enter a number between 0 and 8");
+                System.out.println("❌ Please enter a number between 0 and 14");
                 return getChoice();
             }
         } catch (NumberFormatException e) {
@@ -109,6 +180,24 @@ public class LiteraLuraService {
             case 8:
                 searchFromGutendexApi();
                 return true;
+            case 9:
+                harvestGutendexCatalog();
+                return true;
+            case 10:
+                showImportJobs();
+                return true;
+            case 11:
+                syncWithGutendex();
+                return true;
+            case 12:
+                manageLibraryFiles();
+                return true;
+            case 13:
+                showStatistics();
+                return true;
+            case 14:
+                findBooksBySubject();
+                return true;
             case 0:
                 return false;
             default:
@@ -164,13 +253,19 @@ public class LiteraLuraService {
             if (authorChoice >= 1 && authorChoice <= authors.size()) {
                 Author selectedAuthor = authors.get(authorChoice - 1);
                 
+                // "English" or "ENGLISH" is stored as its ISO code, "en"
+                List<Language> languages = dictionaryResolver.languages(List.of(language));
+                
                 Book book = new Book(title);
-                book.setLanguage(language);
+                book.setLanguage(languages.isEmpty() ? null : languages.get(0));
                 book.setPublicationYear(year);
                 book.setAuthor(selectedAuthor);
+                book.getAuthors().add(selectedAuthor);
+                book.getLanguages().addAll(languages);
                 
                 bookRepository.save(book);
-                System.out.println("✅ Book added successfully!");
+                System.out.println("✅ Book added successfully!" +
+                        (book.getLanguage() != null ? " (language: " + book.getLanguageCode() + ")" : ""));
             } else {
                 System.out.println("❌ Invalid author choice");
             }
@@ -194,6 +289,11 @@ public class LiteraLuraService {
             return;
         }
 
+        if (authorRepository.findByNormalizedName(AuthorResolver.normalize(name)).isPresent()) {
+            System.out.println("⚠️ This author is already in the library");
+            return;
+        }
+
         System.out.print("Enter birth year (optional): ");
         String birthYearStr = scanner.nextLine();
         Integer birthYear = null;
@@ -231,14 +331,12 @@ public class LiteraLuraService {
         System.out.println("📚 ALL BOOKS");
         System.out.println("═".repeat(30));
         
-        List<Book> books = bookRepository.findAll();
-        if (books.isEmpty()) {
+        // Printed as rows arrive, so the first book shows up right away on a large library
+        long count = libraryReader.forEachBook(book -> System.out.println("- " + book));
+        if (count == 0) {
             System.out.println("📭 No books found in the library.");
         } else {
-            System.out.println("Found " + books.size() + " books:\n");
-            for (Book book : books) {
-                System.out.println("- " + book);
-            }
+            System.out.println("\nFound " + count + " books.");
         }
     }
 
@@ -249,25 +347,23 @@ public class LiteraLuraService {
         System.out.println("👥 ALL AUTHORS");
         System.out.println("═".repeat(30));
         
-        List<Author> authors = authorRepository.findAll();
-        if (authors.isEmpty()) {
+        long count = libraryReader.forEachAuthor(author -> System.out.println("- " + author));
+        if (count == 0) {
             System.out.println("📭 No authors found in the library.");
         } else {
-            System.out.println("Found " + authors.size() + " authors:\n");
-            for (Author author : authors) {
-                System.out.println("- " + author);
-            }
+            System.out.println("\nFound " + count + " authors.");
         }
     }
 
     /**
-     * Finds books by language.
+     * Finds books by language, or in several languages at once ("en, fr").
+     * Answered from the in-memory language and search indexes.
      */
     private void findBooksByLanguage() {
         System.out.println("🌍 FIND BOOKS BY LANGUAGE");
         System.out.println("═".repeat(30));
         
-        System.out.print("Enter language: ");
+        System.out.print("Enter language (e.g., en, English; several separated by commas): ");
         String language = scanner.nextLine();
         
         if (language.trim().isEmpty()) {
@@ -275,12 +371,42 @@ public class LiteraLuraService {
             return;
         }
 
-        List<Book> books = bookRepository.findByLanguageIgnoreCase(language);
+        List<String> languages = List.of(language.split(","));
+        List<Long> ids = languageIndex.books(languages).stream().mapToObj(Long::valueOf).toList();
+        List<BookSummary> books = bookSearchIndex.summaries(ids);
+        String codes = languages.stream().map(DictionaryResolver::normalizeLanguage).filter(Objects::nonNull)
+                .distinct().collect(Collectors.joining(" + "));
+        if (books.isEmpty()) {
+            System.out.println("📭 No books found in language: " + codes);
+        } else {
+            System.out.println("Found " + books.size() + " books in " + codes + ":\n");
+            for (BookSummary book : books) {
+                System.out.println("- " + book);
+            }
+        }
+    }
+
+    /**
+     * Finds books by subject heading ("science fiction", "London").
+     */
+    private void findBooksBySubject() {
+        System.out.println("🏷️ FIND BOOKS BY SUBJECT");
+        System.out.println("═".repeat(30));
+
+        System.out.print("Enter subject: ");
+        String subject = scanner.nextLine().trim();
+
+        if (subject.isEmpty()) {
+            System.out.println("❌ Subject cannot be empty");
+            return;
+        }
+
+        List<BookSummary> books = bookRepository.findSummariesBySubject(subject, Limit.of(SEARCH_RESULT_LIMIT));
         if (books.isEmpty()) {
-            System.out.println("📭 No books found in language: " + language);
+            System.out.println("📭 No books found with subject: " + subject);
         } else {
-            System.out.println("Found " + books.size() + " books in " + language + ":\n");
-            for (Book book : books) {
+            System.out.println("Found " + books.size() + " books about " + subject + ":\n");
+            for (BookSummary book : books) {
                 System.out.println("- " + book);
             }
         }
@@ -298,14 +424,22 @@ public class LiteraLuraService {
         
         try {
             int year = Integer.parseInt(yearStr);
-            List<Author> authors = authorRepository.findAuthorsAliveInYear(year);
+            List<Long> authorIds = authorLifespanIndex.aliveIn(year);
             
-            if (authors.isEmpty()) {
+            if (authorIds.isEmpty()) {
                 System.out.println("📭 No authors found alive in year " + year);
             } else {
-                System.out.println("Found " + authors.size() + " authors alive in " + year + ":\n");
-                for (Author author : authors) {
-                    System.out.println("- " + author);
+                System.out.println("Found " + authorIds.size() + " authors alive in " + year + ":\n");
+                // Loaded in chunks to keep each query's id list short; printed in birth year order
+                for (int from = 0; from < authorIds.size(); from += ID_CHUNK_SIZE) {
+                    List<Long> chunk = authorIds.subList(from, Math.min(from + ID_CHUNK_SIZE, authorIds.size()));
+                    Map<Long, Author> authors = new HashMap<>();
+                    authorRepository.findAllById(chunk).forEach(author -> authors.put(author.getId(), author));
+                    for (Long authorId : chunk) {
+                        if (authors.containsKey(authorId)) {
+                            System.out.println("- " + authors.get(authorId));
+                        }
+                    }
                 }
             }
         } catch (NumberFormatException e) {
@@ -314,7 +448,8 @@ public class LiteraLuraService {
     }
 
     /**
-     * Searches books by title.
+     * Searches books by title. The in-memory index also matches author names;
+     * the database engine only looks at titles.
      */
     private void searchBooksByTitle() {
         System.out.println("🔍 SEARCH BOOKS BY TITLE");
@@ -328,16 +463,27 @@ public class LiteraLuraService {
             return;
         }
 
-        List<Book> books = bookRepository.findByTitleContainingIgnoreCase(title);
-        if (books.isEmpty()) {
+        List<?> hits = searchEngine.equalsIgnoreCase("database")
+                ? searchBooksInDatabase(title)
+                : bookSearchIndex.search(title, SEARCH_RESULT_LIMIT);
+        if (hits.isEmpty()) {
             System.out.println("📭 No books found with title containing: " + title);
         } else {
-            System.out.println("Found " + books.size() + " books matching '" + title + "':\n");
-            for (Book book : books) {
-                System.out.println("- " + book);
+            System.out.println("Found " + hits.size() + " books matching '" + title + "':\n");
+            for (Object hit : hits) {
+                System.out.println("- " + hit);
             }
         }
     }
+
+    /**
+     * Searches titles with the PostgreSQL indexes: full-text first,
+     * then trigram similarity so misspelled titles still match.
+     */
+    private List<Book> searchBooksInDatabase(String title) {
+        List<Book> books = bookRepository.searchByTitleFullText(title, SEARCH_RESULT_LIMIT);
+        return books.isEmpty() ? bookRepository.searchByTitleSimilarity(title, SEARCH_RESULT_LIMIT) : books;
+    }
     
     /**
      * Searches books from Gutendex API and allows saving to library.
@@ -350,33 +496,53 @@ public class LiteraLuraService {
         System.out.println("1. Search by title");
         System.out.println("2. Search by author");
         System.out.println("3. Search by language");
-        System.out.print("Choose (1-3): ");
+        System.out.println("4. Search title, author and language at once");
+        System.out.print("Choose (1-4): ");
         
         try {
             int searchType = Integer.parseInt(scanner.nextLine());
-            List<GutendexBook> results = List.of();
+            GutendexResult<List<GutendexBook>> result;
+            ImportJob.Type jobType;
+            String query;
             
             switch (searchType) {
                 case 1:
                     System.out.print("Enter title to search: ");
-                    String title = scanner.nextLine();
-                    results = gutendexService.searchBooksByTitle(title);
+                    query = scanner.nextLine();
+                    jobType = ImportJob.Type.TITLE_SEARCH;
+                    result = gutendexService.searchBooksByTitle(query);
                     break;
                 case 2:
                     System.out.print("Enter author name: ");
-                    String author = scanner.nextLine();
-                    results = gutendexService.searchBooksByAuthor(author);
+                    query = scanner.nextLine();
+                    jobType = ImportJob.Type.AUTHOR_SEARCH;
+                    result = gutendexService.searchBooksByAuthor(query);
                     break;
                 case 3:
                     System.out.print("Enter language code (e.g., en, es, pt): ");
-                    String language = scanner.nextLine();
-                    results = gutendexService.searchBooksByLanguage(language);
+                    query = scanner.nextLine();
+                    jobType = ImportJob.Type.LANGUAGE_SEARCH;
+                    result = gutendexService.searchBooksByLanguage(query);
+                    break;
+                case 4:
+                    result = combinedSearch();
+                    // The combined results are imported by id, there is no single search to repeat
+                    jobType = null;
+                    query = null;
                     break;
                 default:
                     System.out.println("❌ Invalid search type");
                     return;
             }
             
+            if (result instanceof GutendexResult.Failure<List<GutendexBook>> failure) {
+                System.out.println(failure.kind() == GutendexException.Kind.CIRCUIT_OPEN
+                        ? "❌ Gutendex API is not responding right now. Please try again in a minute."
+                        : "❌ Gutendex API search failed: " + failure.message());
+                return;
+            }
+
+            List<GutendexBook> results = result.orElse(List.of());
             if (results.isEmpty()) {
                 System.out.println("📭 No books found in Gutendex API.");
                 return;
@@ -387,29 +553,167 @@ public class LiteraLuraService {
                 System.out.println((i + 1) + ". " + results.get(i));
             }
             
-            System.out.print("\nEnter book number to save (0 to cancel): ");
-            int bookChoice = Integer.parseInt(scanner.nextLine());
+            System.out.println("\nEnter book numbers to save, separated by commas,");
+            System.out.print("'all' to import every result of this search, or 0 to cancel: ");
+            String selection = scanner.nextLine().trim();
             
-            if (bookChoice > 0 && bookChoice <= results.size()) {
-                GutendexBook selectedBook = results.get(bookChoice - 1);
-                
-                // Convert and save book
-                Book book = gutendexService.convertToBook(selectedBook);
-                Author author = gutendexService.convertToAuthor(selectedBook);
-                
-                // Save author first
-                author = authorRepository.save(author);
-                book.setAuthor(author);
-                
-                // Save book
-                bookRepository.save(book);
-                System.out.println("✅ Book saved to your library!");
-            } else if (bookChoice != 0) {
-                System.out.println("❌ Invalid book number");
+            if (selection.equalsIgnoreCase("all")) {
+                ImportJob job = jobType != null
+                        ? importJobService.submitSearch(jobType, query)
+                        : importJobService.submitIds(results.stream().map(GutendexBook::getId).toList());
+                System.out.println("📥 Import job #" + job.getId() + " queued. Check it with option 10.");
+                return;
+            }
+            
+            List<Integer> ids = new ArrayList<>();
+            for (String part : selection.split(",")) {
+                int bookChoice = Integer.parseInt(part.trim());
+                if (bookChoice == 0) {
+                    return;
+                }
+                if (bookChoice < 0 || bookChoice > results.size()) {
+                    System.out.println("❌ Invalid book number: " + bookChoice);
+                    return;
+                }
+                ids.add(results.get(bookChoice - 1).getId());
             }
             
+            ImportJob job = importJobService.submitIds(ids);
+            System.out.println("📥 Import job #" + job.getId() + " queued for " + ids.size() + " book(s). Check it with option 10.");
+            
         } catch (NumberFormatException e) {
             System.out.println("❌ Please enter a valid number");
         }
     }
+
+    /**
+     * Asks for a title, author and language and searches them all in parallel.
+     */
+    private GutendexResult<List<GutendexBook>> combinedSearch() {
+        System.out.print("Enter title (blank to skip): ");
+        String title = scanner.nextLine();
+        System.out.print("Enter author name (blank to skip): ");
+        String author = scanner.nextLine();
+        System.out.print("Enter language code (blank to skip): ");
+        String language = scanner.nextLine();
+
+        GutendexCombinedSearch.CombinedResult combined = gutendexCombinedSearch.search(title, author, language);
+        if (combined.isPartial()) {
+            System.out.println("⚠️ Some results are missing (" + combined.pagesFailed() + " pages failed, "
+                    + combined.pagesTimedOut() + " too slow).");
+        }
+        return GutendexResult.success(combined.books());
+    }
+
+    /**
+     * Downloads every book of the Gutendex catalog into the library.
+     * An interrupted harvest picks up where it stopped.
+     */
+    private void harvestGutendexCatalog() {
+        System.out.println("🚜 HARVEST GUTENDEX CATALOG");
+        System.out.println("═".repeat(35));
+        System.out.println("This downloads the whole catalog (tens of thousands of books).");
+        System.out.print("Continue? (y/n): ");
+
+        if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+            return;
+        }
+
+        try {
+            GutendexHarvester.HarvestResult result = gutendexHarvester.harvest(page -> {
+                bookImportService.importBooks(page);
+                System.out.print(".");
+            });
+            System.out.println("\n✅ Harvested " + result.books() + " books from " + result.pages()
+                    + " pages (started at page " + result.startPage() + ")");
+        } catch (GutendexException | UncheckedIOException e) {
+            System.out.println("\n❌ Harvest stopped: " + e.getMessage());
+            System.out.println("Run it again to continue from the last saved page.");
+        }
+    }
+
+    /**
+     * Shows the progress of the most recent import jobs.
+     */
+    private void showImportJobs() {
+        System.out.println("📥 IMPORT JOBS");
+        System.out.println("═".repeat(35));
+
+        List<ImportJob> jobs = importJobService.recentJobs(RECENT_JOBS_LIMIT);
+        if (jobs.isEmpty()) {
+            System.out.println("📭 No import jobs yet. Queue one from option 8.");
+            return;
+        }
+        for (ImportJob job : jobs) {
+            System.out.printf("%s, %.1f books/s%n", job, job.getBooksPerSecond());
+        }
+    }
+
+    /**
+     * Imports new Gutendex books and updates books that changed.
+     */
+    private void syncWithGutendex() {
+        System.out.println("🔄 SYNC WITH GUTENDEX");
+        System.out.println("═".repeat(35));
+
+        try {
+            BookSyncService.SyncResult result = bookSyncService.sync();
+            System.out.println("✅ Sync finished: " + result);
+        } catch (GutendexException | UncheckedIOException e) {
+            System.out.println("❌ Sync stopped: " + e.getMessage());
+            System.out.println("Run it again to continue.");
+        }
+    }
+
+    /**
+     * Loads a catalog dump, or backs up / restores the library.
+     */
+    private void manageLibraryFiles() {
+        System.out.println("📦 LIBRARY FILES");
+        System.out.println("═".repeat(35));
+
+        System.out.println("1. Load a catalog dump (one Gutendex book as JSON per line)");
+        System.out.println("2. Export the library to a backup file");
+        System.out.println("3. Import a backup file");
+        System.out.print("Choose (1-3): ");
+
+        String option = scanner.nextLine().trim();
+        if (!option.equals("1") && !option.equals("2") && !option.equals("3")) {
+            System.out.println("❌ Invalid option");
+            return;
+        }
+
+        System.out.print("Enter the file path: ");
+        String path = scanner.nextLine().trim();
+        if (path.isEmpty()) {
+            System.out.println("❌ Path cannot be empty");
+            return;
+        }
+
+        try {
+            Object result = switch (option) {
+                case "1" -> catalogDumpLoader.load(Path.of(path));
+                case "2" -> libraryArchive.exportTo(Path.of(path));
+                default -> libraryArchive.importFrom(Path.of(path));
+            };
+            System.out.println("✅ " + result);
+        } catch (UncheckedIOException | IllegalStateException | InvalidPathException | DataAccessException e) {
+            System.out.println("❌ Failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Shows books per language, the top authors and download counts.
+     */
+    private void showStatistics() {
+        System.out.println("📊 LIBRARY STATISTICS");
+        System.out.println("═".repeat(35));
+
+        LibraryStatistics.Report report = libraryStatistics.report(TOP_AUTHORS);
+        if (report.totalBooks() == 0) {
+            System.out.println("📭 The library is empty.");
+            return;
+        }
+        System.out.print(report);
+    }
 }
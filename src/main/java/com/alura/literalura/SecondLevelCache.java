@@ -0,0 +1,100 @@
+package com.alura.literalura;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Access to Hibernate's second-level and query cache (see application.conf):
+ * hit ratios for monitoring, and eviction for writes Hibernate can't see.
+ *
+ * Writes made through entities (save, delete, JPQL updates) keep the cache
+ * correct by themselves. Native SQL writes don't, so code that changes
+ * tables that way must evict what it changed.
+ */
+@Component
+public class SecondLevelCache {
+
+    // Query cache region of the author finders, evicted when authors are upserted
+    public static final String AUTHOR_QUERIES = "author-queries";
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    /**
+     * Drops cached author query results, e.g. after a native insert into authors.
+     */
+    public void evictAuthorQueries() {
+        sessionFactory().getCache().evictQueryRegion(AUTHOR_QUERIES);
+    }
+
+    /**
+     * Drops one cached author, e.g. after a native update of its row.
+     * @param authorId Id of the author
+     */
+    public void evictAuthor(Long authorId) {
+        sessionFactory().getCache().evictEntityData(Author.class, authorId);
+    }
+
+    /**
+     * Drops everything cached, e.g. after a bulk load with plain SQL.
+     */
+    public void evictAll() {
+        sessionFactory().getCache().evictAll();
+    }
+
+    /**
+     * @return Hit and miss counts, overall and per cache region
+     */
+    public Report stats() {
+        Statistics statistics = sessionFactory().getStatistics();
+        List<RegionStats> regions = new ArrayList<>();
+        String[] regionNames = statistics.getSecondLevelCacheRegionNames();
+        Arrays.sort(regionNames);
+        for (String regionName : regionNames) {
+            CacheRegionStatistics region = statistics.getCacheRegionStatistics(regionName);
+            if (region != null) {
+                regions.add(new RegionStats(regionName, region.getHitCount(), region.getMissCount(),
+                        region.getPutCount(), region.getElementCountInMemory(),
+                        hitRatio(region.getHitCount(), region.getMissCount())));
+            }
+        }
+        return new Report(statistics.isStatisticsEnabled(),
+                hitRatio(statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount()),
+                hitRatio(statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount()),
+                statistics.getPrepareStatementCount(),
+                regions);
+    }
+
+    private SessionFactory sessionFactory() {
+        return entityManagerFactory.unwrap(SessionFactory.class);
+    }
+
+    private static double hitRatio(long hits, long misses) {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    /**
+     * Cache statistics (all zero unless hibernate.generate_statistics is on).
+     * @param statisticsEnabled Whether Hibernate is collecting statistics
+     * @param entityHitRatio Share of entity lookups answered by the cache
+     * @param queryHitRatio Share of cacheable queries answered by the cache
+     * @param statementsPrepared SQL statements sent to the database so far
+     * @param regions Per-region counts
+     */
+    public record Report(boolean statisticsEnabled, double entityHitRatio, double queryHitRatio,
+                         long statementsPrepared, List<RegionStats> regions) {}
+
+    /**
+     * Statistics of one cache region.
+     * @param elements Entries held now (-1 if the provider doesn't say)
+     */
+    public record RegionStats(String name, long hits, long misses, long puts, long elements, double hitRatio) {}
+}
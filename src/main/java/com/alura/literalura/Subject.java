@@ -0,0 +1,54 @@
+package com.alura.literalura;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+/**
+ * A Gutendex subject heading ("Science fiction", "London (England) -- Fiction").
+ * Each heading is stored once and books refer to it by id.
+ */
+@Entity
+@Cacheable
+@org.hibernate.annotations.Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@Table(name = "subjects")
+public class Subject {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "subject_seq")
+    @SequenceGenerator(name = "subject_seq", sequenceName = "subjects_seq", allocationSize = 50)
+    private Long id;
+
+    // As given by Gutendex, trimmed
+    @Column(nullable = false, unique = true, length = 1000)
+    private String name;
+
+    // Default constructor
+    public Subject() {}
+
+    // Constructor with name
+    public Subject(String name) {
+        this.name = name;
+    }
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
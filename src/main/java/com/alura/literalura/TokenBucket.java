@@ -0,0 +1,65 @@
+package com.alura.literalura;
+
+/**
+ * Client-side rate limiter.
+ * Tokens refill at a steady rate up to a maximum burst, and each request
+ * takes one token, waiting when none are left.
+ */
+public class TokenBucket {
+
+    private final double permitsPerSecond;
+    private final double capacity;
+
+    // Guarded by this
+    private double tokens;
+    private long lastRefill;
+    private long waits;
+
+    public TokenBucket(double permitsPerSecond, int capacity) {
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes a token, waiting until one is available.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                refill();
+                if (tokens >= 1) {
+                    tokens -= 1;
+                    return;
+                }
+                waits++;
+                waitNanos = (long) ((1 - tokens) / permitsPerSecond * 1_000_000_000L);
+            }
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        }
+    }
+
+    /**
+     * @return Tokens available right now
+     */
+    public synchronized double availableTokens() {
+        refill();
+        return tokens;
+    }
+
+    /**
+     * @return How many times a caller had to wait for a token
+     */
+    public synchronized long getWaits() {
+        return waits;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) / 1_000_000_000.0 * permitsPerSecond);
+        lastRefill = now;
+    }
+}
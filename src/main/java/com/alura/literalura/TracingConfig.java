@@ -0,0 +1,26 @@
+package com.alura.literalura;
+
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationTextPublisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Local tracing: when literalura.tracing.log-spans is on, every observation
+ * (API requests, Gutendex requests) is logged as it starts and stops, with
+ * its tags and duration. Nothing is sent anywhere.
+ */
+@Configuration
+public class TracingConfig {
+
+    private static final Logger log = LoggerFactory.getLogger("literalura.spans");
+
+    @Bean
+    @ConditionalOnProperty(name = "literalura.tracing.log-spans", havingValue = "true")
+    public ObservationHandler<?> spanLogger() {
+        return new ObservationTextPublisher(log::info);
+    }
+}
@@ -0,0 +1,61 @@
+package com.alura.literalura;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.Filter;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.filter.ShallowEtagHeaderFilter;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * Web settings for the REST API.
+ */
+@Configuration
+public class WebConfig {
+
+    // The size filter runs inside the ETag filter, which buffers the response body
+    private static final int ETAG_FILTER_ORDER = 0;
+    private static final int RESPONSE_SIZE_FILTER_ORDER = 1;
+
+    /**
+     * Adds an ETag to every API response and answers 304 Not Modified when
+     * the client already has the same version (If-None-Match).
+     */
+    @Bean
+    public FilterRegistrationBean<ShallowEtagHeaderFilter> etagFilter() {
+        FilterRegistrationBean<ShallowEtagHeaderFilter> registration = new FilterRegistrationBean<>(new ShallowEtagHeaderFilter());
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(ETAG_FILTER_ORDER);
+        return registration;
+    }
+
+    /**
+     * Records the size of every API response body (before compression) in
+     * "http.server.response.size", tagged like http.server.requests.
+     */
+    @Bean
+    public FilterRegistrationBean<Filter> responseSizeFilter(MeterRegistry meterRegistry) {
+        Filter filter = (request, response, chain) -> {
+            chain.doFilter(request, response);
+            ContentCachingResponseWrapper body = WebUtils.getNativeResponse(response, ContentCachingResponseWrapper.class);
+            Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            if (body != null && uri != null) {
+                DistributionSummary.builder("http.server.response.size")
+                        .baseUnit("bytes")
+                        .tag("method", ((HttpServletRequest) request).getMethod())
+                        .tag("uri", uri.toString())
+                        .register(meterRegistry)
+                        .record(body.getContentSize());
+            }
+        };
+        FilterRegistrationBean<Filter> registration = new FilterRegistrationBean<>(filter);
+        registration.addUrlPatterns("/api/*");
+        registration.setOrder(RESPONSE_SIZE_FILTER_ORDER);
+        return registration;
+    }
+}
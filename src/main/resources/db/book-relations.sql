@@ -0,0 +1,10 @@
+-- Books saved before they had several authors only have the author_id
+-- column. Links it into book_authors. Runs on every start, after Hibernate
+-- has created the tables; books that already have links are left alone.
+-- (Languages are moved and linked by LanguageMigration, which needs Java
+-- to turn language names into ISO codes.)
+INSERT INTO book_authors (book_id, author_id, position)
+SELECT b.id, b.author_id, 0
+FROM books b
+WHERE b.author_id IS NOT NULL
+  AND NOT EXISTS (SELECT 1 FROM book_authors ba WHERE ba.book_id = b.id);
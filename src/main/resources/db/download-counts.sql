@@ -0,0 +1,6 @@
+-- Gutendex books used to keep their download count in publication_year.
+-- Moves it to download_count. Runs on every start, after Hibernate has
+-- added the column; rows already moved are left alone.
+UPDATE books
+SET download_count = publication_year, publication_year = NULL
+WHERE gutendex_id IS NOT NULL AND download_count IS NULL AND publication_year IS NOT NULL;
@@ -0,0 +1,22 @@
+-- Search indexes that Hibernate's ddl-auto=update doesn't create.
+-- Runs after Hibernate has updated the schema, on every start, so every
+-- statement must be safe to run again.
+
+-- Trigram matching for substring (LIKE '%term%') and fuzzy searches
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+CREATE INDEX IF NOT EXISTS books_title_trgm_idx ON books USING GIN (lower(title) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS authors_name_trgm_idx ON authors USING GIN (lower(name) gin_trgm_ops);
+
+-- Full-text search on titles; 'simple' because titles come in many languages
+ALTER TABLE books ADD COLUMN IF NOT EXISTS title_tsv tsvector
+    GENERATED ALWAYS AS (to_tsvector('simple', coalesce(title, ''))) STORED;
+
+CREATE INDEX IF NOT EXISTS books_title_tsv_idx ON books USING GIN (title_tsv);
+
+-- Filters through the book link tables start from the linked row (subject, language, author),
+-- while Hibernate's primary keys start with book_id
+CREATE INDEX IF NOT EXISTS subjects_name_trgm_idx ON subjects USING GIN (lower(name) gin_trgm_ops);
+CREATE INDEX IF NOT EXISTS book_subjects_subject_idx ON book_subjects (subject_id);
+CREATE INDEX IF NOT EXISTS book_languages_language_idx ON book_languages (language_id);
+CREATE INDEX IF NOT EXISTS book_authors_author_idx ON book_authors (author_id);
@@ -0,0 +1,10 @@
+-- Books and authors used to get IDENTITY ids; they now come from sequences
+-- (allocated 50 at a time, so inserts can be batched). Hibernate creates the
+-- sequences starting at 1, which on an existing database would hand out ids
+-- that are already taken. Moves each sequence past the highest id in its
+-- table. Runs on every start, before anything is inserted, and never moves a
+-- sequence backwards, so it is safe to run again.
+SELECT setval('books_seq', greatest((SELECT coalesce(max(id), 0) FROM books) + 50,
+                                    (SELECT last_value FROM books_seq)));
+SELECT setval('authors_seq', greatest((SELECT coalesce(max(id), 0) FROM authors) + 50,
+                                      (SELECT last_value FROM authors_seq)));
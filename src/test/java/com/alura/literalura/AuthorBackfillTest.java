@@ -0,0 +1,98 @@
+package com.alura.literalura;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Starts on a database from before names were normalized, where the same
+ * author was saved twice. db/book-relations.sql links both books to their
+ * author_id before the backfill runs, so merging the duplicates has to move
+ * those links too, and the statistics built at startup must not keep the
+ * deleted author.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "literalura.console.enabled=false",
+        "gutendex.cache.directory=",
+        // ddl-auto=update warns about constraints it cannot find in the legacy tables
+        "logging.level.org.hibernate.engine.jdbc.spi.SqlExceptionHelper=ERROR"
+})
+class AuthorBackfillTest {
+
+    private static final String LEGACY_SCHEMA = """
+            CREATE TABLE authors (id bigint PRIMARY KEY, name varchar(255) NOT NULL,
+                                  birth_year integer, death_year integer);
+            CREATE TABLE books (id bigint PRIMARY KEY, title varchar(255) NOT NULL,
+                                author_id bigint REFERENCES authors, publication_year integer, gutendex_id integer UNIQUE);
+            INSERT INTO authors (id, name) VALUES (1, 'Dickens, Charles'), (2, 'DICKENS,  Charles'), (3, 'Austen, Jane');
+            INSERT INTO books (id, title, author_id) VALUES
+                (1, 'Oliver Twist', 1), (2, 'Great Expectations', 2), (3, 'Bleak House', 2), (4, 'Emma', 3);
+            """;
+
+    private static EmbeddedPostgres postgres;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private LibraryStatistics libraryStatistics;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        try {
+            postgres = EmbeddedPostgres.start();
+            try (Connection connection = postgres.getPostgresDatabase().getConnection();
+                 Statement statement = connection.createStatement()) {
+                statement.execute(LEGACY_SCHEMA);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres"));
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        postgres.close();
+    }
+
+    @Test
+    void duplicateAuthorsAreMergedWithTheirLinks() {
+        List<Long> dickens = jdbcTemplate.queryForList(
+                "SELECT id FROM authors WHERE normalized_name = 'dickens, charles'", Long.class);
+        assertThat(dickens).hasSize(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM authors", Long.class)).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM authors WHERE normalized_name IS NULL", Long.class))
+                .isZero();
+
+        long survivor = dickens.get(0);
+        assertThat(jdbcTemplate.queryForList("SELECT author_id FROM books WHERE id IN (1, 2, 3)", Long.class))
+                .containsOnly(survivor);
+        assertThat(jdbcTemplate.queryForList("SELECT author_id FROM book_authors WHERE book_id IN (1, 2, 3)", Long.class))
+                .hasSize(3)
+                .containsOnly(survivor);
+
+        assertThat(libraryStatistics.report(10).topAuthors())
+                .extracting(LibraryStatistics.AuthorCount::authorId, LibraryStatistics.AuthorCount::books)
+                .containsExactly(tuple(survivor, 3), tuple(3L, 1));
+    }
+}
@@ -0,0 +1,115 @@
+package com.alura.literalura;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The book listings must load authors and languages with the books, so the
+ * number of SQL statements doesn't grow with the number of books (no N+1).
+ * Every book gets its own author, the worst case for per-book author selects.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "literalura.console.enabled=false",
+        "gutendex.cache.directory=",
+        // ddl-auto=update warns about constraints it cannot find in a fresh database
+        "logging.level.org.hibernate.engine.jdbc.spi.SqlExceptionHelper=ERROR"
+})
+class BookQueryStatementCountTest {
+
+    private static EmbeddedPostgres postgres;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private BookImportService bookImportService;
+
+    @Autowired
+    private SecondLevelCache secondLevelCache;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        try {
+            postgres = EmbeddedPostgres.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres") + "&reWriteBatchedInserts=true");
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        postgres.close();
+    }
+
+    @Test
+    void statementCountDoesNotGrowWithTheNumberOfBooks() {
+        bookImportService.importBooks(books(1, 10));
+        List<Long> withTenBooks = statementCounts();
+
+        bookImportService.importBooks(books(11, 990));
+        List<Long> withThousandBooks = statementCounts();
+
+        assertThat(bookRepository.count()).isEqualTo(1_000);
+        assertThat(withThousandBooks).isEqualTo(withTenBooks);
+    }
+
+    /**
+     * Statements run by each listing, printing every book (which reads its author and language).
+     */
+    private List<Long> statementCounts() {
+        List<Long> counts = new ArrayList<>();
+        counts.add(statementsFor(() -> bookRepository.findAll()));
+        counts.add(statementsFor(() -> bookRepository.findByLanguageIgnoreCase("English")));
+        counts.add(statementsFor(() -> bookRepository.findByTitleContainingIgnoreCase("book")));
+        return counts;
+    }
+
+    private long statementsFor(Supplier<List<Book>> listing) {
+        // Cached entities and query results would hide the selects
+        secondLevelCache.evictAll();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<Book> books = listing.get();
+        books.forEach(Book::toString);
+        assertThat(books).isNotEmpty();
+        return statistics.getPrepareStatementCount();
+    }
+
+    private static List<GutendexBook> books(int firstId, int count) {
+        List<GutendexBook> books = new ArrayList<>(count);
+        for (int id = firstId; id < firstId + count; id++) {
+            GutendexBook book = new GutendexBook();
+            book.setId(id);
+            book.setTitle("Book " + id);
+            book.setAuthors(List.of(new GutendexPerson("Author" + id + ", Given")));
+            book.setLanguages(List.of("en"));
+            book.setSubjects(List.of());
+            book.setDownload_count(id);
+            books.add(book);
+        }
+        return books;
+    }
+}
@@ -0,0 +1,207 @@
+package com.alura.literalura;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Harvests from a local server that serves a canned three-page catalog
+ * (70 books: 32 + 32 + 6) the way Gutendex pages it.
+ */
+class GutendexHarvesterTest {
+
+    private static final int BOOKS = 70;
+    private static final int PAGE_SIZE = 32;
+    private static final int CONCURRENCY = 2;
+    private static final Pattern PAGE_PARAM = Pattern.compile("[?&]page=(\\d+)");
+
+    @TempDir
+    Path workDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private final Map<Integer, Integer> failingPages = new ConcurrentHashMap<>();
+    private volatile int catalogSize = BOOKS;
+    private HttpServer server;
+    private AnnotationConfigApplicationContext context;
+    private GutendexHarvester harvester;
+    private Path checkpointFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/books/", this::servePage);
+        server.start();
+
+        checkpointFile = workDir.resolve("harvest.checkpoint");
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("test", Map.of(
+                "gutendex.base-url", "http://127.0.0.1:" + server.getAddress().getPort() + "/books/",
+                "gutendex.http.version", "HTTP_1_1",
+                "gutendex.retry.max-attempts", "1",
+                "gutendex.rate-limit.permits-per-second", "1000000",
+                "gutendex.rate-limit.burst", "1000000",
+                "gutendex.cache.directory", "",
+                "gutendex.harvest.concurrency", String.valueOf(CONCURRENCY),
+                "gutendex.harvest.checkpoint-file", checkpointFile.toString())));
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.registerBean(ObservationRegistry.class, ObservationRegistry::create);
+        context.register(GutendexHttpClient.class, GutendexResponseCache.class, GutendexService.class,
+                GutendexHarvester.class);
+        context.refresh();
+        harvester = context.getBean(GutendexHarvester.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+        server.stop(0);
+    }
+
+    @Test
+    void harvestsEveryPageInIdOrder() {
+        List<Integer> ids = new ArrayList<>();
+        GutendexHarvester.HarvestResult result = harvester.harvest(page -> page.forEach(book -> ids.add(book.getId())));
+
+        assertThat(result).isEqualTo(new GutendexHarvester.HarvestResult(1, 3, BOOKS));
+        assertThat(ids).containsExactlyElementsOf(IntStream.rangeClosed(1, BOOKS).boxed().toList());
+        assertThat(requests).allMatch(query -> query.contains("sort=ascending"));
+        assertThat(checkpointFile).doesNotExist();
+    }
+
+    @Test
+    void resumesAfterTheCheckpointedPage() throws IOException {
+        Files.writeString(checkpointFile, catalogUrl(1));
+
+        List<Integer> ids = new ArrayList<>();
+        GutendexHarvester.HarvestResult result = harvester.harvest(page -> page.forEach(book -> ids.add(book.getId())));
+
+        assertThat(result).isEqualTo(new GutendexHarvester.HarvestResult(2, 2, BOOKS - PAGE_SIZE));
+        assertThat(ids).first().isEqualTo(PAGE_SIZE + 1);
+        assertThat(requests).noneMatch(query -> query.endsWith("page=1"));
+    }
+
+    @Test
+    void checkpointAtTheLastPageMeansDone() throws IOException {
+        Files.writeString(checkpointFile, catalogUrl(3));
+
+        GutendexHarvester.HarvestResult result = harvester.harvest(page -> {
+            throw new AssertionError("Nothing left to write");
+        });
+
+        assertThat(result.pages()).isZero();
+        assertThat(checkpointFile).doesNotExist();
+    }
+
+    @Test
+    void ignoresCheckpointsTakenOnAnotherSortOrder() throws IOException {
+        Files.writeString(checkpointFile, "https://gutendex.com/books/?page=2");
+
+        GutendexHarvester.HarvestResult result = harvester.harvest(page -> {});
+
+        assertThat(result.startPage()).isEqualTo(1);
+        assertThat(result.books()).isEqualTo(BOOKS);
+    }
+
+    @Test
+    void failedPageKeepsTheCheckpointOfTheLastWrittenPage() throws IOException {
+        failingPages.put(3, 500);
+
+        assertThatThrownBy(() -> harvester.harvest(page -> {}))
+                .isInstanceOf(GutendexException.class)
+                .extracting(e -> ((GutendexException) e).getKind())
+                .isEqualTo(GutendexException.Kind.SERVER_ERROR);
+        // Page 2 may or may not have been written before page 3 failed
+        assertThat(pageOf(Files.readString(checkpointFile))).isBetween(1, 2);
+    }
+
+    @Test
+    void slowWriterHoldsNoMorePagesThanTheConcurrencyLimit() {
+        catalogSize = 20 * PAGE_SIZE;
+        int[] written = {0};
+        int[] mostHeld = {0};
+
+        harvester.harvest(page -> {
+            written[0]++;
+            // Pages downloaded but not written yet, including this one
+            mostHeld[0] = Math.max(mostHeld[0], requests.size() - written[0] + 1);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertThat(written[0]).isEqualTo(20);
+        assertThat(mostHeld[0]).isLessThanOrEqualTo(CONCURRENCY);
+    }
+
+    private void servePage(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        requests.add(query);
+        int page = pageOf("?" + query);
+        int lastPage = (catalogSize + PAGE_SIZE - 1) / PAGE_SIZE;
+
+        int status = failingPages.getOrDefault(page, page > lastPage ? 404 : 200);
+        byte[] body = status == 200 ? pageJson(page, lastPage) : "{\"detail\":\"Invalid page.\"}".getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private byte[] pageJson(int page, int lastPage) throws IOException {
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (int id = (page - 1) * PAGE_SIZE + 1; id <= Math.min(page * PAGE_SIZE, catalogSize); id++) {
+            results.add(Map.of("id", id, "title", "Book " + id,
+                    "authors", List.of(Map.of("name", "Author " + id % 7)),
+                    "languages", List.of("en"), "subjects", List.of(), "download_count", id));
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("count", catalogSize);
+        json.put("next", page < lastPage ? catalogUrl(page + 1) : null);
+        json.put("previous", null);
+        json.put("results", results);
+        return objectMapper.writeValueAsBytes(json);
+    }
+
+    private String catalogUrl(int page) {
+        return context.getBean(GutendexService.class).catalogPageUrl(page);
+    }
+
+    private static int pageOf(String url) {
+        Matcher matcher = PAGE_PARAM.matcher(url);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : 1;
+    }
+}
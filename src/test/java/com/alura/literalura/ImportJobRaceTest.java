@@ -0,0 +1,139 @@
+package com.alura.literalura;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two jobs import overlapping ids at the same time. The local Gutendex holds
+ * both id requests until both have arrived, so the jobs look for missing
+ * books together and one of them loses the insert race on gutendex_id.
+ * Its chunk must be retried instead of failing the job.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE, properties = {
+        "literalura.console.enabled=false",
+        "literalura.import.parallelism=2",
+        "gutendex.cache.directory=",
+        "gutendex.http.version=HTTP_1_1",
+        "gutendex.retry.max-attempts=1",
+        "gutendex.rate-limit.permits-per-second=1000000",
+        "gutendex.rate-limit.burst=1000000",
+        // ddl-auto=update warns about constraints it cannot find in a fresh database
+        "logging.level.org.hibernate.engine.jdbc.spi.SqlExceptionHelper=ERROR"
+})
+class ImportJobRaceTest {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final CountDownLatch bothRequests = new CountDownLatch(2);
+    private static EmbeddedPostgres postgres;
+    private static HttpServer server;
+
+    @Autowired
+    private ImportJobService importJobService;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @DynamicPropertySource
+    static void environment(DynamicPropertyRegistry registry) {
+        try {
+            postgres = EmbeddedPostgres.start();
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        server.createContext("/books/", ImportJobRaceTest::serveIds);
+        // The first request waits for the second, so they need their own threads
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        registry.add("spring.datasource.url", () -> postgres.getJdbcUrl("postgres", "postgres") + "&reWriteBatchedInserts=true");
+        registry.add("spring.datasource.username", () -> "postgres");
+        registry.add("spring.datasource.password", () -> "postgres");
+        registry.add("gutendex.base-url", () -> "http://127.0.0.1:" + server.getAddress().getPort() + "/books/");
+    }
+
+    @AfterAll
+    static void stop() throws IOException {
+        server.stop(0);
+        postgres.close();
+    }
+
+    @Test
+    void overlappingJobsBothFinish() throws InterruptedException {
+        ImportJob first = importJobService.submitIds(IntStream.rangeClosed(1, 100).boxed().toList());
+        ImportJob second = importJobService.submitIds(IntStream.rangeClosed(51, 150).boxed().toList());
+
+        List<ImportJob> finished = List.of(awaitFinished(first.getId()), awaitFinished(second.getId()));
+
+        assertThat(finished).allSatisfy(job -> {
+            assertThat(job.getStatus()).as("job #%d: %s", job.getId(), job.getError()).isEqualTo(ImportJob.Status.DONE);
+            assertThat(job.getProcessed()).isEqualTo(100);
+        });
+        assertThat(finished.stream().mapToInt(ImportJob::getBooksSaved).sum()).isEqualTo(150);
+        assertThat(bookRepository.count()).isEqualTo(150);
+    }
+
+    private ImportJob awaitFinished(Long jobId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (System.nanoTime() < deadline) {
+            ImportJob job = importJobService.getJob(jobId).orElseThrow();
+            if (job.isFinished()) {
+                return job;
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("Import job #" + jobId + " did not finish");
+    }
+
+    private static void serveIds(HttpExchange exchange) throws IOException {
+        bothRequests.countDown();
+        try {
+            bothRequests.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        String ids = exchange.getRequestURI().getQuery().replaceAll(".*ids=([0-9,]+).*", "$1");
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (String id : ids.split(",")) {
+            results.add(Map.of("id", Integer.parseInt(id), "title", "Book " + id,
+                    "authors", List.of(Map.of("name", "Author " + id)),
+                    "languages", List.of("en"), "subjects", List.of(), "download_count", Integer.parseInt(id)));
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("count", results.size());
+        json.put("next", null);
+        json.put("previous", null);
+        json.put("results", results);
+
+        byte[] body = objectMapper.writeValueAsBytes(json);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}